@@ -1,5 +1,14 @@
 package pl.wsb.fitnesstracker.mail.api;
 
-public record EmailDto(String toAddress, String subject, String content) {
+import jakarta.annotation.Nullable;
+
+/**
+ * Email message with a plain text content and an optional HTML alternative of it.
+ */
+public record EmailDto(String toAddress, String subject, String content, @Nullable String htmlContent) {
+
+    public EmailDto(String toAddress, String subject, String content) {
+        this(toAddress, subject, content, null);
+    }
 
 }
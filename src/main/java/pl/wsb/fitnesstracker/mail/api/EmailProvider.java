@@ -7,13 +7,21 @@
  */
 package pl.wsb.fitnesstracker.mail.api;
 
-import pl.wsb.fitnesstracker.training.api.Training;
-
-import java.util.List;
+import pl.wsb.fitnesstracker.training.api.MonthlyTrainingSummary;
 
 /**
  * Service interface for sending emails.
  */
 public interface EmailProvider {
-    EmailDto sendMail(String to, String subject, List<Training> trainingList);
+
+    /**
+     * Renders the monthly report of the given training summary.
+     *
+     * @param to      email address of the recipient
+     * @param subject subject of the email
+     * @param summary summary of the recipient's trainings in the reported month
+     * @return email with the report as plain text and HTML
+     */
+    EmailDto sendMail(String to, String subject, MonthlyTrainingSummary summary);
+
 }
\ No newline at end of file
@@ -13,7 +13,8 @@ package pl.wsb.fitnesstracker.mail.api;
 public interface EmailSender {
 
     /**
-     * Sends the email message to the recipient from the provided {@link EmailDto}.
+     * Sends the email message to the recipient from the provided {@link EmailDto}. The message is queued and delivered
+     * in the background, only once the transaction of the caller (if any) has been committed.
      *
      * @param email information on email to be sent
      */
@@ -0,0 +1,193 @@
+/*
+ ____            _            _____ _             _     _      ___ ___ ___ ___ ___
+|    \ ___ _____|_|___ ___   |   __| |_ ___ ___  |_|___| |_   | . | . | . |_  |  _|
+|  |  | .'|     | | .'|   |  |__   |  _|  _| . | | | -_| '_|  |_  |_  | . |_  | . |
+|____/|__,|_|_|_|_|__,|_|_|  |_____|_| |_| |___|_| |___|_,_|  |___|___|___|___|___|
+                                               |___|
+ */
+package pl.wsb.fitnesstracker.mail.internal;
+
+import pl.wsb.fitnesstracker.mail.internal.OutboxEmail.Status;
+
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.MimeMessage;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.MimeMessageHelper;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Delivers the emails of the outbox in the background. Every poll claims batches of due emails and sends each batch
+ * through one connection to the mail server, until the outbox is drained or {@link MailOutboxProperties#getMaxPollDuration()}
+ * has passed. The polls share the scheduler with the other scheduled jobs, so a large outbox is drained over several
+ * polls, letting the other jobs run in between. Emails with an HTML content are sent as a multipart alternative of the plain text and the HTML. An email, that could not be sent, is retried
+ * with exponential backoff and becomes {@link Status#DEAD} after {@link MailOutboxProperties#getMaxAttempts()}
+ * attempts. Delivery is at least once: an email is sent again, if the dispatcher stops before recording its delivery.
+ * Sent emails are purged after {@link MailOutboxProperties#getSentRetention()}, dead ones are kept for inspection.
+ * <p>
+ * Emails are claimed in a short transaction, so that no database locks are held while talking to the mail server.
+ */
+@Component
+class EmailOutboxDispatcher {
+
+    private static final Logger log = Logger.getLogger(EmailOutboxDispatcher.class.getName());
+
+    private final OutboxEmailRepository outboxEmailRepository;
+    private final JavaMailSender javaMailSender;
+    private final TransactionTemplate transactionTemplate;
+    private final MailOutboxProperties properties;
+    private final MailProperties mailProperties;
+
+    EmailOutboxDispatcher(OutboxEmailRepository outboxEmailRepository, JavaMailSender javaMailSender,
+                          PlatformTransactionManager transactionManager, MailOutboxProperties properties,
+                          MailProperties mailProperties) {
+        this.outboxEmailRepository = outboxEmailRepository;
+        this.javaMailSender = javaMailSender;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.properties = properties;
+        this.mailProperties = mailProperties;
+    }
+
+    @Scheduled(fixedDelayString = "${mail.outbox.poll-interval:PT5S}")
+    void poll() {
+        long deadline = System.nanoTime() + properties.getMaxPollDuration().toNanos();
+        int sent = 0;
+        Batch batch;
+        do {
+            batch = dispatch();
+            sent += batch.sent();
+        } while (batch.claimed() == properties.getBatchSize() && System.nanoTime() - deadline < 0);
+        if (sent > 0) {
+            log.info("Sent %d emails from the outbox".formatted(sent));
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${mail.outbox.purge-interval:PT1H}")
+    void purge() {
+        LocalDateTime before = LocalDateTime.now().minus(properties.getSentRetention());
+        Integer purged = transactionTemplate.execute(status ->
+                outboxEmailRepository.deleteSentBefore(Status.SENT.ordinal(), before));
+        if (purged != null && purged > 0) {
+            log.info("Purged %d emails sent before %s from the outbox".formatted(purged, before));
+        }
+    }
+
+    /**
+     * Claims one batch of due emails, sends it and records the outcome of every email.
+     *
+     * @return numbers of claimed and sent emails
+     */
+    Batch dispatch() {
+        LocalDateTime now = LocalDateTime.now();
+        List<OutboxEmail> emails = transactionTemplate.execute(status -> {
+            List<OutboxEmail> due = outboxEmailRepository.lockDue(Status.PENDING.ordinal(), now, properties.getBatchSize());
+            due.forEach(email -> email.claim(now.plus(properties.getClaimTimeout())));
+            return due;
+        });
+        if (emails.isEmpty()) {
+            return new Batch(0, 0);
+        }
+
+        Map<Long, Exception> failures = new HashMap<>();
+        Map<Long, MimeMessage> messages = new LinkedHashMap<>();
+        for (OutboxEmail email : emails) {
+            try {
+                messages.put(email.getId(), toMessage(email));
+            } catch (MessagingException e) {
+                failures.put(email.getId(), e);
+            }
+        }
+        send(messages, failures);
+
+        LocalDateTime finishedAt = LocalDateTime.now();
+        transactionTemplate.executeWithoutResult(status -> outboxEmailRepository.findAllById(
+                emails.stream().map(OutboxEmail::getId).toList()).forEach(email -> {
+                    Exception failure = failures.get(email.getId());
+                    if (failure == null) {
+                        email.markSent(finishedAt);
+                        return;
+                    }
+                    email.markFailed(String.valueOf(failure.getMessage()), finishedAt.plus(backoff(email.getAttempts() + 1)),
+                            properties.getMaxAttempts());
+                    if (email.getStatus() == Status.DEAD) {
+                        log.warning("Email %d to %s is dead after %d attempts: %s".formatted(email.getId(),
+                                email.getToAddress(), email.getAttempts(), failure.getMessage()));
+                    }
+                }));
+        return new Batch(emails.size(), emails.size() - failures.size());
+    }
+
+    /**
+     * Creates the message of the email, a multipart alternative of plain text and HTML if the email has an HTML content.
+     */
+    private MimeMessage toMessage(OutboxEmail email) throws MessagingException {
+        MimeMessage message = javaMailSender.createMimeMessage();
+        MimeMessageHelper helper = new MimeMessageHelper(message, email.getHtmlContent() != null, StandardCharsets.UTF_8.name());
+        if (mailProperties.getFrom() != null) {
+            helper.setFrom(mailProperties.getFrom());
+        }
+        helper.setTo(email.getToAddress());
+        helper.setSubject(email.getSubject());
+        if (email.getHtmlContent() != null) {
+            helper.setText(email.getContent(), email.getHtmlContent());
+        } else {
+            helper.setText(email.getContent());
+        }
+        return message;
+    }
+
+    /**
+     * Sends the messages through one connection and adds the failures of the messages, that could not be sent, to
+     * the given failures by email ID.
+     */
+    private void send(Map<Long, MimeMessage> messages, Map<Long, Exception> failures) {
+        if (messages.isEmpty()) {
+            return;
+        }
+        try {
+            javaMailSender.send(messages.values().toArray(MimeMessage[]::new));
+        } catch (MailSendException e) {
+            // messages are compared by identity, so the failed messages map to their emails unambiguously
+            messages.forEach((id, message) -> {
+                Exception failure = e.getFailedMessages().isEmpty() ? e : e.getFailedMessages().get(message);
+                if (failure != null) {
+                    failures.put(id, failure);
+                }
+            });
+        } catch (MailException e) {
+            messages.keySet().forEach(id -> failures.put(id, e));
+        }
+    }
+
+    /**
+     * @param attempt number of the failed attempt, starting at 1
+     * @return delay of the next attempt
+     */
+    Duration backoff(int attempt) {
+        Duration delay = properties.getInitialBackoff().multipliedBy(1L << Math.min(attempt - 1, 30));
+        return delay.compareTo(properties.getMaxBackoff()) > 0 ? properties.getMaxBackoff() : delay;
+    }
+
+    /**
+     * Outcome of the delivery of one batch.
+     *
+     * @param claimed number of emails claimed for delivery
+     * @param sent    number of emails accepted by the mail server
+     */
+    record Batch(int claimed, int sent) {
+    }
+
+}
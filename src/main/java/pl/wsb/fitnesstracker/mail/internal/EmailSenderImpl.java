@@ -10,38 +10,33 @@ package pl.wsb.fitnesstracker.mail.internal;
 import pl.wsb.fitnesstracker.mail.api.EmailDto;
 import pl.wsb.fitnesstracker.mail.api.EmailSender;
 
-import org.springframework.mail.SimpleMailMessage;
-import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
 
 /**
- * Implementation of {@link EmailSender} interface.
+ * Implementation of {@link EmailSender} interface, that queues the emails in the outbox. They are delivered
+ * by the {@link EmailOutboxDispatcher}.
  */
 @Service
 public class EmailSenderImpl implements EmailSender {
 
-    /**
-     * JavaMailSender instance used to send emails.
-     */
-    private final JavaMailSender javaMailSender;
+    private final OutboxEmailRepository outboxEmailRepository;
 
-    public EmailSenderImpl(JavaMailSender javaMailSender) {
-        this.javaMailSender = javaMailSender;
+    public EmailSenderImpl(OutboxEmailRepository outboxEmailRepository) {
+        this.outboxEmailRepository = outboxEmailRepository;
     }
 
     /**
-     * Sends the email message to the recipient from the provided {@link EmailDto}.
+     * Queues the email message in the outbox, as part of the transaction of the caller, if there is one.
      *
      * @param email information on email to be sent
      */
     @Override
+    @Transactional
     public void send(EmailDto email) {
-        SimpleMailMessage message = new SimpleMailMessage();
-
-        message.setTo(email.toAddress());
-        message.setSubject(email.subject());
-        message.setText(email.content());
-
-        javaMailSender.send(message);
+        outboxEmailRepository.save(new OutboxEmail(email.toAddress(), email.subject(), email.content(), email.htmlContent(),
+                LocalDateTime.now()));
     }
-}
\ No newline at end of file
+}
@@ -9,45 +9,52 @@ package pl.wsb.fitnesstracker.mail.internal;
 
 import pl.wsb.fitnesstracker.mail.api.EmailDto;
 import pl.wsb.fitnesstracker.mail.api.EmailProvider;
-import pl.wsb.fitnesstracker.training.api.Training;
+import pl.wsb.fitnesstracker.training.api.MonthlyTrainingSummary;
 
 import org.springframework.stereotype.Service;
-import java.time.format.DateTimeFormatter;
-import java.time.LocalDateTime;
-import java.util.List;
 
+/**
+ * Renders the monthly report in a plain text and an HTML variant. The templates are compiled once, when the service
+ * is created, and rendered into a buffer of the calling thread, which is sized up front and reused by the following
+ * reports, so that rendering only allocates the resulting texts.
+ */
 @Service
 public class EmailService implements EmailProvider {
 
+    static final String TEXT_TEMPLATE = "mail/monthly-report.txt";
+    static final String HTML_TEMPLATE = "mail/monthly-report.html";
+
+    /**
+     * Largest capacity of a buffer kept for the next report, larger buffers are released after rendering.
+     */
+    static final int MAX_RETAINED_CAPACITY = 1 << 20;
+
+    private static final ThreadLocal<StringBuilder> buffer = ThreadLocal.withInitial(() -> new StringBuilder(4096));
+
+    private final ReportTemplate textTemplate;
+    private final ReportTemplate htmlTemplate;
+
+    public EmailService() {
+        this.textTemplate = ReportTemplate.load(TEXT_TEMPLATE, false);
+        this.htmlTemplate = ReportTemplate.load(HTML_TEMPLATE, true);
+    }
+
     @Override
-    public EmailDto sendMail(String to, String subject, List<Training> trainingList) {
-        System.out.println("Starting creation of an email to:" + to);
-
-        LocalDateTime now = LocalDateTime.now();
-        LocalDateTime lastWeek = now.minusWeeks(1);
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
-        StringBuilder reportString = new StringBuilder();
-
-        reportString.append("MONTHLY REPORT\n");
-        reportString.append("For: ").append(to).append("\n");
-        reportString.append("Generated from: ").append(lastWeek.format(formatter))
-                .append(" to: ").append(now.format(formatter));
-        reportString.append("Amount of trainings: ").append(trainingList.size()).append("\n");
-        reportString.append("TRAINING REPORT");
-
-        for (Training training : trainingList) {
-            reportString.append("Training Id: ").append(training.getId()).append("\n");
-            reportString.append("Start time: ").append(training.getStartTime()).append("\n");
-            reportString.append("End time: ").append(training.getEndTime()).append("\n");
-            reportString.append("Activity type: ").append(training.getActivityType()).append("\n");
-            reportString.append("Distance: ").append(training.getDistance()).append("\n");
-            reportString.append("Average speed: ").append(training.getAverageSpeed()).append("\n");
-        }
-        reportString.append("END OF REPORT\n");
+    public EmailDto sendMail(String to, String subject, MonthlyTrainingSummary summary) {
+        ReportTemplate.Report report = new ReportTemplate.Report(to, summary);
 
-        EmailDto mail = new EmailDto(to, subject, reportString.toString());
-        System.out.println("Mail created.");
+        return new EmailDto(to, subject, render(textTemplate, report), render(htmlTemplate, report));
+    }
 
-        return mail;
+    private static String render(ReportTemplate template, ReportTemplate.Report report) {
+        StringBuilder out = buffer.get();
+        out.setLength(0);
+        out.ensureCapacity(template.estimateLength(report.summary().activities().size()));
+        template.render(report, out);
+        String text = out.toString();
+        if (out.capacity() > MAX_RETAINED_CAPACITY) {
+            buffer.remove();
+        }
+        return text;
     }
-}
\ No newline at end of file
+}
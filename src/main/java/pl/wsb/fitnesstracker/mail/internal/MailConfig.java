@@ -17,17 +17,30 @@ import org.springframework.mail.javamail.JavaMailSenderImpl;
  * Configuration class for mail sending.
  */
 @Configuration
-@EnableConfigurationProperties(MailProperties.class)
+@EnableConfigurationProperties({MailProperties.class, MailOutboxProperties.class,
+        org.springframework.boot.autoconfigure.mail.MailProperties.class})
 class MailConfig {
 
     /**
-     * Creates a JavaMailSender instance.
+     * Creates a JavaMailSender instance, connecting to the mail server configured with the {@code spring.mail.*}
+     * properties.
      *
+     * @param smtp Spring mail configuration
      * @return JavaMailSender instance
      */
     @Bean
-    public JavaMailSender javaMailSender() {
-        return new JavaMailSenderImpl();
+    public JavaMailSender javaMailSender(org.springframework.boot.autoconfigure.mail.MailProperties smtp) {
+        JavaMailSenderImpl sender = new JavaMailSenderImpl();
+        sender.setHost(smtp.getHost());
+        if (smtp.getPort() != null) {
+            sender.setPort(smtp.getPort());
+        }
+        sender.setUsername(smtp.getUsername());
+        sender.setPassword(smtp.getPassword());
+        sender.setProtocol(smtp.getProtocol());
+        sender.setDefaultEncoding(smtp.getDefaultEncoding().name());
+        sender.getJavaMailProperties().putAll(smtp.getProperties());
+        return sender;
     }
 
 }
@@ -0,0 +1,104 @@
+/*
+ ____            _            _____ _             _     _      ___ ___ ___ ___ ___
+|    \ ___ _____|_|___ ___   |   __| |_ ___ ___  |_|___| |_   | . | . | . |_  |  _|
+|  |  | .'|     | | .'|   |  |__   |  _|  _| . | | | -_| '_|  |_  |_  | . |_  | . |
+|____/|__,|_|_|_|_|__,|_|_|  |_____|_| |_| |___|_| |___|_,_|  |___|___|___|___|___|
+                                               |___|
+ */
+package pl.wsb.fitnesstracker.mail.internal;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Configuration of the {@link EmailOutboxDispatcher}. The interval between polls of the outbox is configured with
+ * {@code mail.outbox.poll-interval}, 5 seconds by default, and the interval between purges of the sent emails with
+ * {@code mail.outbox.purge-interval}, 1 hour by default.
+ */
+@ConfigurationProperties(prefix = "mail.outbox")
+class MailOutboxProperties {
+
+    /**
+     * Largest number of emails sent over one connection to the mail server.
+     */
+    private final int batchSize;
+
+    /**
+     * Number of delivery attempts, after which an email is dead.
+     */
+    private final int maxAttempts;
+
+    /**
+     * Delay after the first failed attempt, it doubles with every further failure.
+     */
+    private final Duration initialBackoff;
+
+    /**
+     * Largest delay between two attempts.
+     */
+    private final Duration maxBackoff;
+
+    /**
+     * Time after which an attempt, that was not finished (e.g. due to a crash), is considered lost and the email
+     * is sent again.
+     */
+    private final Duration claimTimeout;
+
+    /**
+     * Longest time a poll keeps sending batches, before leaving the rest of the outbox to the next poll, so that
+     * the other scheduled jobs are not held back by a large outbox.
+     */
+    private final Duration maxPollDuration;
+
+    /**
+     * How long a sent email is kept in the outbox before it is purged.
+     */
+    private final Duration sentRetention;
+
+    MailOutboxProperties(@DefaultValue("50") int batchSize, @DefaultValue("5") int maxAttempts,
+                         @DefaultValue("30s") Duration initialBackoff, @DefaultValue("1h") Duration maxBackoff,
+                         @DefaultValue("5m") Duration claimTimeout, @DefaultValue("30s") Duration maxPollDuration,
+                         @DefaultValue("7d") Duration sentRetention) {
+        if (batchSize < 1 || maxAttempts < 1) {
+            throw new IllegalArgumentException("Outbox batch size and max attempts must be positive, were %d and %d"
+                    .formatted(batchSize, maxAttempts));
+        }
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+        this.claimTimeout = claimTimeout;
+        this.maxPollDuration = maxPollDuration;
+        this.sentRetention = sentRetention;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public Duration getInitialBackoff() {
+        return initialBackoff;
+    }
+
+    public Duration getMaxBackoff() {
+        return maxBackoff;
+    }
+
+    public Duration getClaimTimeout() {
+        return claimTimeout;
+    }
+
+    public Duration getMaxPollDuration() {
+        return maxPollDuration;
+    }
+
+    public Duration getSentRetention() {
+        return sentRetention;
+    }
+}
@@ -8,6 +8,8 @@
 package pl.wsb.fitnesstracker.mail.internal;
 
 import pl.wsb.fitnesstracker.mail.api.EmailSender;
+
+import jakarta.annotation.Nullable;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.mail.javamail.JavaMailSender;
 
@@ -17,6 +19,7 @@ import org.springframework.mail.javamail.JavaMailSender;
 @ConfigurationProperties(prefix = "mail")
 class MailProperties {
 
+    @Nullable
     public String getFrom() {
         return from;
     }
@@ -24,9 +27,10 @@ class MailProperties {
     /**
      * Email address that the email should be sent from.
      */
+    @Nullable
     private final String from;
 
-    MailProperties(String from) {
+    MailProperties(@Nullable String from) {
         this.from = from;
     }
 }
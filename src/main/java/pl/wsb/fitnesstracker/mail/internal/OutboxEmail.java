@@ -0,0 +1,167 @@
+/*
+ ____            _            _____ _             _     _      ___ ___ ___ ___ ___
+|    \ ___ _____|_|___ ___   |   __| |_ ___ ___  |_|___| |_   | . | . | . |_  |  _|
+|  |  | .'|     | | .'|   |  |__   |  _|  _| . | | | -_| '_|  |_  |_  | . |_  | . |
+|____/|__,|_|_|_|_|__,|_|_|  |_____|_| |_| |___|_| |___|_,_|  |___|___|___|___|___|
+                                               |___|
+ */
+package pl.wsb.fitnesstracker.mail.internal;
+
+import jakarta.annotation.Nullable;
+import jakarta.persistence.*;
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+import java.time.LocalDateTime;
+
+/**
+ * Email waiting in the outbox for delivery by the {@link EmailOutboxDispatcher}. It is written in the transaction of
+ * the sender, so it is delivered if and only if that transaction commits. The index on
+ * {@code (status, next_attempt_at, id)} serves the lookup of the emails due for delivery.
+ */
+@Entity
+@Table(name = "email_outbox",
+       indexes = @Index(name = "idx_email_outbox_status_next_attempt_at", columnList = "status, next_attempt_at, id"))
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+@ToString
+class OutboxEmail {
+
+    /**
+     * Maximum length of the stored error of the last failed delivery attempt.
+     */
+    static final int MAX_ERROR_LENGTH = 1000;
+
+    enum Status {
+        /**
+         * Waiting for the first or a repeated delivery attempt.
+         */
+        PENDING,
+        /**
+         * Accepted by the mail server.
+         */
+        SENT,
+        /**
+         * Delivery failed too many times and is not attempted anymore.
+         */
+        DEAD
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "email_outbox_seq")
+    @SequenceGenerator(name = "email_outbox_seq", sequenceName = "email_outbox_seq", allocationSize = 50)
+    private Long id;
+
+    @Column(name = "to_address", nullable = false)
+    private String toAddress;
+
+    @Column(name = "subject", nullable = false)
+    private String subject;
+
+    @Lob
+    @Column(name = "content", nullable = false)
+    @ToString.Exclude
+    private String content;
+
+    @Lob
+    @Column(name = "html_content")
+    @ToString.Exclude
+    @Nullable
+    private String htmlContent;
+
+    @Enumerated(EnumType.ORDINAL)
+    @Column(name = "status", nullable = false)
+    private Status status;
+
+    @Column(name = "attempts", nullable = false)
+    private int attempts;
+
+    /**
+     * Time of the next delivery attempt. While an email is being delivered, it is the time when the attempt is
+     * considered lost and the email may be claimed again.
+     */
+    @Column(name = "next_attempt_at", nullable = false)
+    private LocalDateTime nextAttemptAt;
+
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "sent_at")
+    @Nullable
+    private LocalDateTime sentAt;
+
+    @Column(name = "last_error", length = MAX_ERROR_LENGTH)
+    @Nullable
+    private String lastError;
+
+    OutboxEmail(String toAddress, String subject, String content, @Nullable String htmlContent, LocalDateTime createdAt) {
+        this.toAddress = toAddress;
+        this.subject = subject;
+        this.content = content;
+        this.htmlContent = htmlContent;
+        this.status = Status.PENDING;
+        this.nextAttemptAt = createdAt;
+        this.createdAt = createdAt;
+    }
+
+    Long getId() {
+        return id;
+    }
+
+    String getToAddress() {
+        return toAddress;
+    }
+
+    String getSubject() {
+        return subject;
+    }
+
+    String getContent() {
+        return content;
+    }
+
+    @Nullable
+    String getHtmlContent() {
+        return htmlContent;
+    }
+
+    Status getStatus() {
+        return status;
+    }
+
+    int getAttempts() {
+        return attempts;
+    }
+
+    /**
+     * Reserves the email for a delivery attempt, until the given time.
+     *
+     * @param until time when the attempt is considered lost
+     */
+    void claim(LocalDateTime until) {
+        nextAttemptAt = until;
+    }
+
+    void markSent(LocalDateTime now) {
+        status = Status.SENT;
+        sentAt = now;
+        lastError = null;
+    }
+
+    /**
+     * Records a failed delivery attempt.
+     *
+     * @param error       description of the failure
+     * @param retryAt     time of the next attempt
+     * @param maxAttempts number of attempts, after which the email is dead
+     */
+    void markFailed(String error, LocalDateTime retryAt, int maxAttempts) {
+        attempts++;
+        lastError = error.length() > MAX_ERROR_LENGTH ? error.substring(0, MAX_ERROR_LENGTH) : error;
+        if (attempts >= maxAttempts) {
+            status = Status.DEAD;
+        } else {
+            nextAttemptAt = retryAt;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ ____            _            _____ _             _     _      ___ ___ ___ ___ ___
+|    \ ___ _____|_|___ ___   |   __| |_ ___ ___  |_|___| |_   | . | . | . |_  |  _|
+|  |  | .'|     | | .'|   |  |__   |  _|  _| . | | | -_| '_|  |_  |_  | . |_  | . |
+|____/|__,|_|_|_|_|__,|_|_|  |_____|_| |_| |___|_| |___|_,_|  |___|___|___|___|___|
+                                               |___|
+ */
+package pl.wsb.fitnesstracker.mail.internal;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Repository for the {@link OutboxEmail}s.
+ */
+interface OutboxEmailRepository extends JpaRepository<OutboxEmail, Long> {
+
+    /**
+     * Locks the oldest pending emails, that are due for delivery. Rows locked by another transaction are skipped,
+     * so concurrent dispatchers claim disjoint batches instead of waiting for each other.
+     *
+     * @param pending ordinal of {@link OutboxEmail.Status#PENDING}
+     * @param now     current time
+     * @param limit   maximum number of emails to lock
+     * @return locked emails, ordered by the time of their next attempt
+     */
+    @Query(value = """
+            select * from email_outbox
+            where status = :pending and next_attempt_at <= :now
+            order by next_attempt_at, id
+            limit :limit
+            for update skip locked""", nativeQuery = true)
+    List<OutboxEmail> lockDue(int pending, LocalDateTime now, int limit);
+
+    /**
+     * Deletes the emails, that were sent before the given time.
+     *
+     * @param sent   ordinal of {@link OutboxEmail.Status#SENT}
+     * @param before time before which the deleted emails were sent
+     * @return number of deleted emails
+     */
+    @Modifying
+    @Query(value = "delete from email_outbox where status = :sent and sent_at < :before", nativeQuery = true)
+    int deleteSentBefore(int sent, LocalDateTime before);
+
+}
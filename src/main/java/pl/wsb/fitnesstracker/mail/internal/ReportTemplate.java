@@ -0,0 +1,252 @@
+/*
+ ____            _            _____ _             _     _      ___ ___ ___ ___ ___
+|    \ ___ _____|_|___ ___   |   __| |_ ___ ___  |_|___| |_   | . | . | . |_  |  _|
+|  |  | .'|     | | .'|   |  |__   |  _|  _| . | | | -_| '_|  |_  |_  | . |_  | . |
+|____/|__,|_|_|_|_|__,|_|_|  |_____|_| |_| |___|_| |___|_,_|  |___|___|___|___|___|
+                                               |___|
+ */
+package pl.wsb.fitnesstracker.mail.internal;
+
+import pl.wsb.fitnesstracker.training.api.MonthlyTrainingSummary;
+import pl.wsb.fitnesstracker.training.api.MonthlyTrainingSummary.ActivitySummary;
+
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Report template, that is parsed once into a list of segments and rendered by appending them to a buffer. The template
+ * text refers to values with {@code {{name}}} and repeats the part between {@code {{#activities}}} and
+ * {@code {{/activities}}} for every activity of the summary, the line breaks following the section tags are left out.
+ * Values are appended directly to the buffer, without creating intermediate Strings, and are HTML escaped in HTML
+ * templates.
+ * <p>
+ * Report values are {@code recipient}, {@code month}, {@code trainings}, {@code distance}, {@code duration},
+ * {@code longestDistance} and {@code highestAverageSpeed}, activity values are {@code activityType} and the same
+ * values, except for the recipient and month, for the trainings of the activity. Distances and speeds are rounded to
+ * two decimal places, durations are formatted as {@code H:mm:ss}. An unknown name fails the compilation.
+ */
+final class ReportTemplate {
+
+    private static final Pattern TAG = Pattern.compile("\\{\\{([#/]?)(\\w+)}}");
+    private static final String ACTIVITIES_SECTION = "activities";
+
+    /**
+     * Estimated length of a rendered value, used to size the buffer.
+     */
+    private static final int VALUE_LENGTH = 20;
+
+    private static final Map<String, BiConsumer<Report, StringBuilder>> REPORT_VALUES = Map.of(
+            "month", (report, out) -> appendMonth(report.summary().month(), out),
+            "trainings", (report, out) -> out.append(report.summary().trainings()),
+            "distance", (report, out) -> appendRounded(report.summary().totalDistance(), out),
+            "duration", (report, out) -> appendDuration(report.summary().totalDurationSeconds(), out),
+            "longestDistance", (report, out) -> appendRounded(report.summary().longestDistance(), out),
+            "highestAverageSpeed", (report, out) -> appendRounded(report.summary().highestAverageSpeed(), out));
+
+    private static final Map<String, BiConsumer<ActivitySummary, StringBuilder>> ACTIVITY_VALUES = Map.of(
+            "activityType", (activity, out) -> out.append(activity.activityType().name()),
+            "trainings", (activity, out) -> out.append(activity.trainings()),
+            "distance", (activity, out) -> appendRounded(activity.totalDistance(), out),
+            "duration", (activity, out) -> appendDuration(activity.totalDurationSeconds(), out),
+            "longestDistance", (activity, out) -> appendRounded(activity.longestDistance(), out),
+            "highestAverageSpeed", (activity, out) -> appendRounded(activity.highestAverageSpeed(), out));
+
+    private final List<BiConsumer<Report, StringBuilder>> header;
+    private final List<BiConsumer<ActivitySummary, StringBuilder>> activity;
+    private final List<BiConsumer<Report, StringBuilder>> footer;
+    private final int fixedLength;
+    private final int activityLength;
+
+    private ReportTemplate(List<BiConsumer<Report, StringBuilder>> header,
+                           List<BiConsumer<ActivitySummary, StringBuilder>> activity,
+                           List<BiConsumer<Report, StringBuilder>> footer, int fixedLength, int activityLength) {
+        this.header = header;
+        this.activity = activity;
+        this.footer = footer;
+        this.fixedLength = fixedLength;
+        this.activityLength = activityLength;
+    }
+
+    /**
+     * Loads and compiles the template from the classpath.
+     *
+     * @param path path of the template on the classpath
+     * @param html whether the template is HTML, whose values are escaped
+     * @return compiled template
+     * @throws UncheckedIOException     if the template cannot be read
+     * @throws IllegalArgumentException if the template is invalid
+     */
+    static ReportTemplate load(String path, boolean html) {
+        try {
+            return compile(new ClassPathResource(path).getContentAsString(StandardCharsets.UTF_8), html);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Report template %s cannot be read".formatted(path), e);
+        }
+    }
+
+    /**
+     * Compiles the template.
+     *
+     * @param source text of the template
+     * @param html   whether the template is HTML, whose values are escaped
+     * @return compiled template
+     * @throws IllegalArgumentException if the template refers to an unknown value or its activities section is not closed
+     */
+    static ReportTemplate compile(String source, boolean html) {
+        List<BiConsumer<Report, StringBuilder>> header = new ArrayList<>();
+        List<BiConsumer<ActivitySummary, StringBuilder>> activity = new ArrayList<>();
+        List<BiConsumer<Report, StringBuilder>> footer = new ArrayList<>();
+        int fixedLength = 0;
+        int activityLength = 0;
+        boolean inSection = false;
+        boolean afterSection = false;
+
+        Matcher matcher = TAG.matcher(source);
+        int position = 0;
+        while (true) {
+            boolean found = matcher.find();
+            String literal = source.substring(position, found ? matcher.start() : source.length());
+            if (!literal.isEmpty()) {
+                if (inSection) {
+                    activity.add((value, out) -> out.append(literal));
+                    activityLength += literal.length();
+                } else {
+                    (afterSection ? footer : header).add((report, out) -> out.append(literal));
+                    fixedLength += literal.length();
+                }
+            }
+            if (!found) {
+                break;
+            }
+            position = matcher.end();
+            String kind = matcher.group(1);
+            if (!kind.isEmpty() && source.startsWith("\n", position)) {
+                // a section tag on its own line does not render the line break
+                position++;
+            }
+
+            String name = matcher.group(2);
+            if (!kind.isEmpty()) {
+                if (!name.equals(ACTIVITIES_SECTION) || inSection == kind.equals("#") || afterSection) {
+                    throw new IllegalArgumentException("Unexpected section tag %s".formatted(matcher.group()));
+                }
+                inSection = kind.equals("#");
+                afterSection = !inSection;
+            } else if (inSection) {
+                activity.add(value(ACTIVITY_VALUES, name));
+                activityLength += VALUE_LENGTH;
+            } else {
+                (afterSection ? footer : header).add(name.equals("recipient")
+                        ? (report, out) -> append(report.recipient(), html, out)
+                        : value(REPORT_VALUES, name));
+                fixedLength += VALUE_LENGTH;
+            }
+        }
+        if (inSection) {
+            throw new IllegalArgumentException("Section {{#%s}} is not closed".formatted(ACTIVITIES_SECTION));
+        }
+        return new ReportTemplate(List.copyOf(header), List.copyOf(activity), List.copyOf(footer), fixedLength, activityLength);
+    }
+
+    /**
+     * Looks up the value of the given name. All values except the recipient are numbers, dates and enum names, which
+     * never need to be escaped.
+     */
+    private static <T> BiConsumer<T, StringBuilder> value(Map<String, BiConsumer<T, StringBuilder>> values, String name) {
+        BiConsumer<T, StringBuilder> value = values.get(name);
+        if (value == null) {
+            throw new IllegalArgumentException("Unknown report template value {{%s}}".formatted(name));
+        }
+        return value;
+    }
+
+    /**
+     * Appends the month in format {@code yyyy-MM}, field by field. Unlike a {@code DateTimeFormatter}, which creates
+     * a String for every field, it appends the fields straight to the buffer.
+     */
+    private static void appendMonth(YearMonth month, StringBuilder out) {
+        out.append(month.getYear()).append('-');
+        appendTwoDigits(month.getMonthValue(), out);
+    }
+
+    private static void appendDuration(long seconds, StringBuilder out) {
+        out.append(seconds / 3600).append(':');
+        appendTwoDigits((int) (seconds / 60 % 60), out);
+        out.append(':');
+        appendTwoDigits((int) (seconds % 60), out);
+    }
+
+    private static void appendRounded(double value, StringBuilder out) {
+        out.append(Math.round(value * 100) / 100.0);
+    }
+
+    private static void appendTwoDigits(int value, StringBuilder out) {
+        out.append((char) ('0' + value / 10)).append((char) ('0' + value % 10));
+    }
+
+    private static void append(String text, boolean html, StringBuilder out) {
+        if (!html) {
+            out.append(text);
+            return;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '<' -> out.append("&lt;");
+                case '>' -> out.append("&gt;");
+                case '&' -> out.append("&amp;");
+                case '"' -> out.append("&quot;");
+                case '\'' -> out.append("&#39;");
+                default -> out.append(c);
+            }
+        }
+    }
+
+    /**
+     * @param activities number of activities of the report
+     * @return estimated length of the rendered report
+     */
+    int estimateLength(int activities) {
+        return fixedLength + activities * activityLength;
+    }
+
+    /**
+     * Appends the rendered report to the buffer.
+     *
+     * @param report values of the report
+     * @param out    buffer to append to
+     */
+    void render(Report report, StringBuilder out) {
+        for (BiConsumer<Report, StringBuilder> segment : header) {
+            segment.accept(report, out);
+        }
+        for (ActivitySummary value : report.summary().activities()) {
+            for (BiConsumer<ActivitySummary, StringBuilder> segment : activity) {
+                segment.accept(value, out);
+            }
+        }
+        for (BiConsumer<Report, StringBuilder> segment : footer) {
+            segment.accept(report, out);
+        }
+    }
+
+    /**
+     * Values of a report.
+     *
+     * @param recipient email address of the recipient
+     * @param summary   summary of the recipient's trainings
+     */
+    record Report(String recipient, MonthlyTrainingSummary summary) {
+    }
+
+}
@@ -0,0 +1,73 @@
+/*
+ ____            _            _____ _             _     _      ___ ___ ___ ___ ___
+|    \ ___ _____|_|___ ___   |   __| |_ ___ ___  |_|___| |_   | . | . | . |_  |  _|
+|  |  | .'|     | | .'|   |  |__   |  _|  _| . | | | -_| '_|  |_  |_  | . |_  | . |
+|____/|__,|_|_|_|_|__,|_|_|  |_____|_| |_| |___|_| |___|_,_|  |___|___|___|___|___|
+                                               |___|
+ */
+package pl.wsb.fitnesstracker.notification.internal;
+
+import jakarta.annotation.Nullable;
+import jakarta.persistence.*;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+import java.time.LocalDateTime;
+
+/**
+ * Partition of one run of a scheduled job, that is processed by the node holding its lease. The users of a run are
+ * split by {@code mod(user_id, partitionCount)}, so the partitions are disjoint and cover all users. A partition
+ * is leased by one node at a time and can be taken over by any node once the lease has expired without the partition
+ * being completed, e.g. because its node died.
+ */
+@Entity
+@Table(name = "job_partitions",
+       uniqueConstraints = @UniqueConstraint(name = "uk_job_partitions_job_name_run_key_partition_no",
+                                             columnNames = {"job_name", "run_key", "partition_no"}))
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+@Getter
+@ToString
+class JobPartition {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "job_name", nullable = false)
+    private String jobName;
+
+    /**
+     * Key of the run of the job, e.g. the month of a monthly report.
+     */
+    @Column(name = "run_key", nullable = false)
+    private String runKey;
+
+    @Column(name = "partition_no", nullable = false)
+    private int partitionNo;
+
+    @Column(name = "partition_count", nullable = false)
+    private int partitionCount;
+
+    /**
+     * Node holding or having held the lease, {@code null} while the partition has never been claimed.
+     */
+    @Column(name = "owner")
+    @Nullable
+    private String owner;
+
+    @Column(name = "lease_until")
+    @Nullable
+    private LocalDateTime leaseUntil;
+
+    @Column(name = "completed_at")
+    @Nullable
+    private LocalDateTime completedAt;
+
+    void claim(String owner, LocalDateTime leaseUntil) {
+        this.owner = owner;
+        this.leaseUntil = leaseUntil;
+    }
+
+}
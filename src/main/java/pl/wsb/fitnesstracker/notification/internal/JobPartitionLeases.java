@@ -0,0 +1,178 @@
+/*
+ ____            _            _____ _             _     _      ___ ___ ___ ___ ___
+|    \ ___ _____|_|___ ___   |   __| |_ ___ ___  |_|___| |_   | . | . | . |_  |  _|
+|  |  | .'|     | | .'|   |  |__   |  _|  _| . | | | -_| '_|  |_  |_  | . |_  | . |
+|____/|__,|_|_|_|_|__,|_|_|  |_____|_| |_| |___|_| |___|_,_|  |___|___|___|___|___|
+                                               |___|
+ */
+package pl.wsb.fitnesstracker.notification.internal;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+/**
+ * Leases of the {@link JobPartition}s, that coordinate the nodes running a scheduled job through the database, without
+ * an external coordinator. Every node creates the partitions of a run, if they do not exist yet, and then claims one
+ * partition after another until none is left, so the work is spread among the live nodes and a completed partition
+ * is never processed again. The holder renews the lease while processing, a partition whose lease has expired can be
+ * claimed by any node.
+ * <p>
+ * Every operation runs in its own short transaction, so the leases are visible to the other nodes immediately and
+ * are independent of the transaction of the caller.
+ */
+@Component
+class JobPartitionLeases {
+
+    private static final Logger log = Logger.getLogger(JobPartitionLeases.class.getName());
+
+    private final JobPartitionRepository jobPartitionRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final String owner;
+    private final Duration leaseDuration;
+
+    @Autowired
+    JobPartitionLeases(JobPartitionRepository jobPartitionRepository, PlatformTransactionManager transactionManager,
+                       NotificationProperties properties) {
+        this(jobPartitionRepository, transactionManager, properties.getNodeId() != null ? properties.getNodeId()
+                : ManagementFactory.getRuntimeMXBean().getName() + "/" + UUID.randomUUID(), properties.getLeaseDuration());
+    }
+
+    JobPartitionLeases(JobPartitionRepository jobPartitionRepository, PlatformTransactionManager transactionManager,
+                       String owner, Duration leaseDuration) {
+        this.jobPartitionRepository = jobPartitionRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.owner = owner;
+        this.leaseDuration = leaseDuration;
+    }
+
+    String getOwner() {
+        return owner;
+    }
+
+    /**
+     * Creates the partitions of a run, unless they exist already. The partition count of existing partitions is kept.
+     *
+     * @param jobName        name of the job
+     * @param runKey         key of the run
+     * @param partitionCount number of partitions
+     */
+    void createPartitions(String jobName, String runKey, int partitionCount) {
+        try {
+            int created = transactionTemplate.execute(status ->
+                    jobPartitionRepository.createPartitions(jobName, runKey, partitionCount));
+            if (created > 0) {
+                log.info("Created %d partitions of %s %s".formatted(created, jobName, runKey));
+            }
+        } catch (DataIntegrityViolationException e) {
+            // another node has created the partitions at the same time
+            log.fine("Partitions of %s %s have been created by another node".formatted(jobName, runKey));
+        }
+    }
+
+    /**
+     * Claims a partition of a run, that is neither completed nor leased by a live node.
+     *
+     * @param jobName name of the job
+     * @param runKey  key of the run
+     * @return lease of the claimed partition, empty if no partition is available
+     */
+    Optional<Lease> claim(String jobName, String runKey) {
+        LocalDateTime now = LocalDateTime.now();
+        return transactionTemplate.execute(status -> jobPartitionRepository.lockAvailable(jobName, runKey, now)
+                .map(partition -> {
+                    if (partition.getOwner() != null) {
+                        log.info("Taking over partition %d of %s %s from %s".formatted(partition.getPartitionNo(),
+                                jobName, runKey, partition.getOwner()));
+                    }
+                    partition.claim(owner, now.plus(leaseDuration));
+                    return new Lease(partition.getId(), partition.getPartitionNo(), partition.getPartitionCount(),
+                            renewalTime());
+                }));
+    }
+
+    /**
+     * Renews the lease once half of its duration has passed.
+     *
+     * @param lease lease held by this node
+     * @return {@code false} if the lease has been lost to another node, which must stop processing the partition
+     */
+    boolean renewIfDue(Lease lease) {
+        if (System.nanoTime() - lease.renewAt < 0) {
+            return true;
+        }
+        int renewed = transactionTemplate.execute(status ->
+                jobPartitionRepository.renew(lease.id, owner, LocalDateTime.now().plus(leaseDuration)));
+        lease.renewAt = renewalTime();
+        return renewed == 1;
+    }
+
+    /**
+     * Completes the partition, so that it is not processed again.
+     *
+     * @param lease lease held by this node
+     * @return {@code false} if the lease has been lost to another node before completing the partition
+     */
+    boolean complete(Lease lease) {
+        return transactionTemplate.execute(status ->
+                jobPartitionRepository.complete(lease.id, owner, LocalDateTime.now())) == 1;
+    }
+
+    /**
+     * @param jobName name of the job
+     * @return keys of the runs of the job with partitions, that are neither completed nor leased by a live node
+     */
+    List<String> findRunsWithAvailablePartitions(String jobName) {
+        return transactionTemplate.execute(status ->
+                jobPartitionRepository.findRunsWithAvailablePartitions(jobName, LocalDateTime.now()));
+    }
+
+    private long renewalTime() {
+        return System.nanoTime() + leaseDuration.toNanos() / 2;
+    }
+
+    /**
+     * Lease of a partition held by this node. The users of the partition are those with
+     * {@code mod(user_id, partitionCount) = partition}.
+     */
+    static final class Lease {
+
+        private final long id;
+        private final int partition;
+        private final int partitionCount;
+        private long renewAt;
+
+        private Lease(long id, int partition, int partitionCount, long renewAt) {
+            this.id = id;
+            this.partition = partition;
+            this.partitionCount = partitionCount;
+            this.renewAt = renewAt;
+        }
+
+        int partition() {
+            return partition;
+        }
+
+        int partitionCount() {
+            return partitionCount;
+        }
+
+        @Override
+        public String toString() {
+            return "partition %d of %d".formatted(partition, partitionCount);
+        }
+    }
+
+}
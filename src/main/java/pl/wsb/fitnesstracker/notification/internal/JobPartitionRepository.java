@@ -0,0 +1,87 @@
+/*
+ ____            _            _____ _             _     _      ___ ___ ___ ___ ___
+|    \ ___ _____|_|___ ___   |   __| |_ ___ ___  |_|___| |_   | . | . | . |_  |  _|
+|  |  | .'|     | | .'|   |  |__   |  _|  _| . | | | -_| '_|  |_  |_  | . |_  | . |
+|____/|__,|_|_|_|_|__,|_|_|  |_____|_| |_| |___|_| |___|_,_|  |___|___|___|___|___|
+                                               |___|
+ */
+package pl.wsb.fitnesstracker.notification.internal;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Repository for the {@link JobPartition}s.
+ */
+interface JobPartitionRepository extends JpaRepository<JobPartition, Long> {
+
+    /**
+     * Creates the partitions {@code 0} to {@code partitionCount - 1} of a run, that do not exist yet.
+     *
+     * @return number of created partitions
+     */
+    @Modifying
+    @Query(value = """
+            insert into job_partitions (job_name, run_key, partition_no, partition_count)
+            select :jobName, :runKey, r.x, :partitionCount
+            from system_range(0, :partitionCount - 1) r
+            where not exists (select 1 from job_partitions p
+                              where p.job_name = :jobName and p.run_key = :runKey and p.partition_no = r.x)""",
+           nativeQuery = true)
+    int createPartitions(String jobName, String runKey, int partitionCount);
+
+    /**
+     * Locks one partition of a run, that is neither completed nor leased. Rows locked by another transaction are
+     * skipped, so nodes claiming at the same time get different partitions instead of waiting for each other.
+     *
+     * @param now current time, leases ending before it have expired
+     * @return locked partition, if any is available
+     */
+    @Query(value = """
+            select * from job_partitions
+            where job_name = :jobName and run_key = :runKey and completed_at is null
+              and (lease_until is null or lease_until < :now)
+            order by partition_no
+            limit 1
+            for update skip locked""", nativeQuery = true)
+    Optional<JobPartition> lockAvailable(String jobName, String runKey, LocalDateTime now);
+
+    /**
+     * Finds the runs of a job with partitions, that are neither completed nor leased.
+     *
+     * @param now current time, leases ending before it have expired
+     * @return keys of the runs
+     */
+    @Query("""
+            select distinct p.runKey from JobPartition p
+            where p.jobName = :jobName and p.completedAt is null and (p.leaseUntil is null or p.leaseUntil < :now)""")
+    List<String> findRunsWithAvailablePartitions(String jobName, LocalDateTime now);
+
+    /**
+     * Extends the lease of a partition, if it is still held by the given owner.
+     *
+     * @return {@code 1} if the lease was extended, {@code 0} if it has been lost
+     */
+    @Modifying
+    @Query("""
+            update JobPartition p set p.leaseUntil = :leaseUntil
+            where p.id = :id and p.owner = :owner and p.completedAt is null""")
+    int renew(Long id, String owner, LocalDateTime leaseUntil);
+
+    /**
+     * Completes a partition, if it is still leased by the given owner.
+     *
+     * @return {@code 1} if the partition was completed, {@code 0} if the lease has been lost
+     */
+    @Modifying
+    @Query("""
+            update JobPartition p set p.completedAt = :completedAt, p.leaseUntil = null
+            where p.id = :id and p.owner = :owner and p.completedAt is null""")
+    int complete(Long id, String owner, LocalDateTime completedAt);
+
+}
@@ -0,0 +1,117 @@
+/*
+ ____            _            _____ _             _     _      ___ ___ ___ ___ ___
+|    \ ___ _____|_|___ ___   |   __| |_ ___ ___  |_|___| |_   | . | . | . |_  |  _|
+|  |  | .'|     | | .'|   |  |__   |  _|  _| . | | | -_| '_|  |_  |_  | . |_  | . |
+|____/|__,|_|_|_|_|__,|_|_|  |_____|_| |_| |___|_| |___|_,_|  |___|___|___|___|___|
+                                               |___|
+ */
+package pl.wsb.fitnesstracker.notification.internal;
+
+import jakarta.annotation.Nullable;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Configuration of the monthly report job of the {@link NotificationService}.
+ */
+@ConfigurationProperties(prefix = "notification.report")
+class NotificationProperties {
+
+    /**
+     * Largest number of reports rendered and queued in the email outbox at the same time. The reports are delivered
+     * to the mail server by the outbox afterwards, independently of this job.
+     */
+    private final int concurrency;
+
+    /**
+     * Number of users whose reports may wait for a free worker. When all workers are busy and the queue is full,
+     * reading further trainings is paused until a report has been queued.
+     */
+    private final int queueCapacity;
+
+    /**
+     * Whether the reports are sent from virtual threads instead of a pool of platform threads. Only applies when
+     * the runtime supports virtual threads, the concurrency is limited either way.
+     */
+    private final boolean virtualThreads;
+
+    /**
+     * Number of partitions the users of a run are split into. The partitions are shared among the nodes running the
+     * job, so it should be a few times the number of nodes. Changing it only affects runs that have not started yet.
+     */
+    private final int partitions;
+
+    /**
+     * How long a node holds the lease of a partition without renewing it. Partitions of a node, that stopped
+     * renewing, are taken over by the other nodes after this time.
+     */
+    private final Duration leaseDuration;
+
+    /**
+     * How long after the scheduled time the reports of a month are still started by the reclaim sweep, if no node
+     * was up to start them at the scheduled time. Later, a node starting for the first time, e.g. on a fresh database,
+     * does not send the reports of the past month.
+     */
+    private final Duration catchUpWindow;
+
+    /**
+     * Name of this node in the partition leases, by default the process name with a random suffix.
+     */
+    @Nullable
+    private final String nodeId;
+
+    NotificationProperties(@DefaultValue("8") int concurrency, @DefaultValue("100") int queueCapacity,
+                           @DefaultValue("false") boolean virtualThreads, @DefaultValue("16") int partitions,
+                           @DefaultValue("5m") Duration leaseDuration, @DefaultValue("1d") Duration catchUpWindow,
+                           @Nullable String nodeId) {
+        if (concurrency < 1 || queueCapacity < 0) {
+            throw new IllegalArgumentException("Report concurrency must be positive and queue capacity not negative, were %d and %d"
+                    .formatted(concurrency, queueCapacity));
+        }
+        if (partitions < 1 || leaseDuration.isNegative() || leaseDuration.isZero()) {
+            throw new IllegalArgumentException("Report partitions and lease duration must be positive, were %d and %s"
+                    .formatted(partitions, leaseDuration));
+        }
+        if (catchUpWindow.isNegative()) {
+            throw new IllegalArgumentException("Report catch-up window must not be negative, was %s".formatted(catchUpWindow));
+        }
+        this.concurrency = concurrency;
+        this.queueCapacity = queueCapacity;
+        this.virtualThreads = virtualThreads;
+        this.partitions = partitions;
+        this.leaseDuration = leaseDuration;
+        this.catchUpWindow = catchUpWindow;
+        this.nodeId = nodeId;
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    public int getPartitions() {
+        return partitions;
+    }
+
+    public Duration getLeaseDuration() {
+        return leaseDuration;
+    }
+
+    public Duration getCatchUpWindow() {
+        return catchUpWindow;
+    }
+
+    @Nullable
+    public String getNodeId() {
+        return nodeId;
+    }
+}
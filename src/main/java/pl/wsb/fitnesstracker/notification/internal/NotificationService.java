@@ -1,67 +1,311 @@
 package pl.wsb.fitnesstracker.notification.internal;
 
 import pl.wsb.fitnesstracker.mail.api.*;
-import pl.wsb.fitnesstracker.training.api.Training;
+import pl.wsb.fitnesstracker.notification.internal.JobPartitionLeases.Lease;
+import pl.wsb.fitnesstracker.training.api.MonthlyTrainingSummary;
 import pl.wsb.fitnesstracker.training.api.TrainingProvider;
-import pl.wsb.fitnesstracker.user.api.User;
-import pl.wsb.fitnesstracker.user.api.UserProvider;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.Data;
-import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
-import java.time.Instant;
 import java.time.LocalDateTime;
-import java.time.ZoneId;
-import java.time.temporal.ChronoUnit;
-import java.util.Date;
-import java.util.List;
-import java.util.stream.Collectors;
+import java.time.LocalTime;
+import java.time.YearMonth;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
+/**
+ * Sends the monthly reports. Every node of a cluster runs the scheduled job, the nodes share the work through
+ * the {@link JobPartitionLeases}: the users are split into partitions, each partition is processed by the node that
+ * claimed it, and the partitions of a node that died are taken over by the others.
+ */
 @Data
 @Service
-@EnableScheduling
 public class NotificationService {
+
+    private static final Logger log = Logger.getLogger(NotificationService.class.getName());
+
+    static final String MONTHLY_REPORT_JOB = "monthly-report";
+
+    /**
+     * Time on the first day of a month, when the reports of the previous month are scheduled.
+     */
+    private static final LocalTime REPORT_TIME = LocalTime.of(8, 0);
+
+    /**
+     * Longest time spent waiting for the last reports of a partition, before checking whether the lease is due
+     * for renewal.
+     */
+    private static final long DRAIN_CHECK_MILLIS = 1000;
+
     private final EmailSender emailSender;
     private final EmailProvider emailProvider;
     private final TrainingProvider trainingProvider;
-    private final UserProvider userProvider;
+    private final NotificationProperties properties;
+    private final JobPartitionLeases jobPartitionLeases;
+    private final Timer renderTimer;
+    private final Timer enqueueTimer;
+    private final Counter sentCounter;
+    private final Counter failedCounter;
 
-    public NotificationService(EmailSender emailSender, EmailProvider emailProvider, TrainingProvider trainingProvider, UserProvider userProvider) {
+    public NotificationService(EmailSender emailSender, EmailProvider emailProvider, TrainingProvider trainingProvider,
+                               NotificationProperties properties, JobPartitionLeases jobPartitionLeases,
+                               MeterRegistry meterRegistry) {
         this.emailSender = emailSender;
         this.emailProvider = emailProvider;
         this.trainingProvider = trainingProvider;
-        this.userProvider = userProvider;
+        this.properties = properties;
+        this.jobPartitionLeases = jobPartitionLeases;
+        this.renderTimer = Timer.builder("notification.report.render")
+                .description("Time of rendering a monthly report").register(meterRegistry);
+        this.enqueueTimer = Timer.builder("notification.report.enqueue")
+                .description("Time of queueing a monthly report in the email outbox").register(meterRegistry);
+        this.sentCounter = Counter.builder("notification.report.sent")
+                .description("Number of sent monthly reports").register(meterRegistry);
+        this.failedCounter = Counter.builder("notification.report.failed")
+                .description("Number of monthly reports, that could not be rendered or sent").register(meterRegistry);
     }
 
     /**
-     * Generates report and sends it to all users.
+     * Generates report and sends it to all users, who trained within the last month. The job only reads the monthly
+     * training summaries, which are kept up to date as trainings are stored. It runs on every node, which share
+     * the users' partitions of the month.
      */
     @Scheduled(cron = "0 0 8 1 * *") //Report scheduled for every 1st of month on 8:00
     public void generateReportAndSendMail() {
-        System.out.println("Report generation on cron schedule");
+        log.info("Report generation on cron schedule");
 
-        List<User> allUsers = userProvider.getAllUsers();
-        LocalDateTime now = LocalDateTime.now();
-        LocalDateTime oneWeekAgo = now.minusMonths(1);
+        sendReports(YearMonth.now().minusMonths(1));
+    }
 
-        for (User user : allUsers) {
+    /**
+     * Takes over the reports of partitions, whose node stopped before completing them, or that have not been claimed
+     * by any node, e.g. because all nodes were down when the job was scheduled.
+     */
+    @Scheduled(fixedDelayString = "${notification.report.reclaim-interval:PT1M}")
+    void reclaimPartitions() {
+        reclaimPartitions(LocalDateTime.now());
+    }
 
-            List<Training> recentTrainings = trainingProvider.getTrainingsByUserId(user.getId()).stream()
-                    .filter(training -> training.getStartTime().isAfter(oneWeekAgo))
-                    .collect(Collectors.toList());
+    /**
+     * Takes over the reports of available partitions. Within {@link NotificationProperties#getCatchUpWindow()} after
+     * the scheduled time, the partitions of the scheduled month are created first, in case no node was up to create
+     * them at the scheduled time.
+     *
+     * @param now current time
+     */
+    void reclaimPartitions(LocalDateTime now) {
+        LocalDateTime scheduledAt = lastScheduledTime(now);
+        if (now.isBefore(scheduledAt.plus(properties.getCatchUpWindow()))) {
+            jobPartitionLeases.createPartitions(MONTHLY_REPORT_JOB, YearMonth.from(scheduledAt).minusMonths(1).toString(),
+                    properties.getPartitions());
+        }
+        for (String runKey : jobPartitionLeases.findRunsWithAvailablePartitions(MONTHLY_REPORT_JOB)) {
+            sendReports(YearMonth.parse(runKey));
+        }
+    }
 
-            if (!recentTrainings.isEmpty()) {
-                String reportString = "MONTHLY REPORT";
-                final EmailDto emailDto = emailProvider.sendMail(user.getEmail(),
-                        reportString,
-                        recentTrainings);
+    /**
+     * @param now current time
+     * @return time, when the reports were scheduled last before the given time
+     */
+    static LocalDateTime lastScheduledTime(LocalDateTime now) {
+        LocalDateTime scheduledAt = now.withDayOfMonth(1).with(REPORT_TIME);
+        return now.isBefore(scheduledAt) ? scheduledAt.minusMonths(1) : scheduledAt;
+    }
 
-                System.out.println("Sending monthly e-mail...");
-                emailSender.send(emailDto);
+    /**
+     * Sends the reports of all users, who trained within the given month, whose partition is neither completed nor
+     * leased by another node. Partitions are claimed one after another until none is left, so the nodes running
+     * the job at the same time share the partitions among them. Returns when no partition is left to claim.
+     *
+     * @param month month of the reports
+     * @return number of partitions completed by this node
+     */
+    int sendReports(YearMonth month) {
+        String runKey = month.toString();
+        jobPartitionLeases.createPartitions(MONTHLY_REPORT_JOB, runKey, properties.getPartitions());
+        int completed = 0;
+        for (Optional<Lease> lease = jobPartitionLeases.claim(MONTHLY_REPORT_JOB, runKey); lease.isPresent();
+             lease = jobPartitionLeases.claim(MONTHLY_REPORT_JOB, runKey)) {
+            if (sendReports(month, lease.get())) {
+                completed++;
             }
         }
+        return completed;
+    }
+
+    /**
+     * Renders the reports of the users of a leased partition, who trained within the given month, and queues them in
+     * the email outbox. The reports are handled by {@link NotificationProperties#getConcurrency()} workers, while
+     * the summaries are read by the calling thread, which also renews the lease. Once
+     * {@link NotificationProperties#getQueueCapacity()} users wait for a worker, reading is paused, so a slow database
+     * holds back the job instead of filling the memory. A report that fails is logged and skipped. Returns when all reports have been handled.
+     * <p>
+     * If the lease is lost, because renewing it took longer than the lease duration, reading stops and the partition
+     * is left to its new owner. Users whose report was already sent get it once more from the new owner. The lease is
+     * also renewed while waiting for the last reports, and the partition is only completed if it is still held.
+     *
+     * @param month month of the reports
+     * @param lease lease of the partition
+     * @return whether the partition has been completed
+     */
+    private boolean sendReports(YearMonth month, Lease lease) {
+        int concurrency = properties.getConcurrency();
+        int maxPending = concurrency + properties.getQueueCapacity();
+        Semaphore pending = new Semaphore(maxPending);
+        Semaphore sending = new Semaphore(concurrency);
+        Run run = new Run();
+        ExecutorService executor = newExecutor(concurrency);
+        long startedAt = System.nanoTime();
+        boolean leaseLost = false;
+        boolean held;
+        try {
+            trainingProvider.forEachUserMonthlySummary(month, lease.partition(), lease.partitionCount(), (user, summary) -> {
+                if (!jobPartitionLeases.renewIfDue(lease)) {
+                    throw new LeaseLostException();
+                }
+                String email = user.getEmail();
+                pending.acquireUninterruptibly();
+                try {
+                    executor.execute(() -> {
+                        sending.acquireUninterruptibly();
+                        try {
+                            sendReport(email, summary, run);
+                        } finally {
+                            sending.release();
+                            pending.release();
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    pending.release();
+                    throw e;
+                }
+            });
+        } catch (LeaseLostException e) {
+            log.warning("Lost the lease of %s of the monthly reports for %s to another node".formatted(lease, month));
+            leaseLost = true;
+        } finally {
+            held = awaitReports(pending, maxPending, lease);
+            executor.shutdown();
+        }
+        if (leaseLost) {
+            return false;
+        }
+        if (!held) {
+            log.warning("Lost the lease of %s of the monthly reports for %s while sending the last reports"
+                    .formatted(lease, month));
+            return false;
+        }
+
+        long millis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt));
+        int reports = run.sent.get() + run.failed.get();
+        log.info("Sent %d monthly reports (%d failed) of %s for %s in %d ms, %d reports/s, mean render %.1f ms, mean enqueue %.1f ms"
+                .formatted(run.sent.get(), run.failed.get(), lease, month, millis, run.sent.get() * 1000L / millis,
+                        meanMillis(run.renderNanos, reports), meanMillis(run.enqueueNanos, run.sent.get())));
+        if (!jobPartitionLeases.complete(lease)) {
+            log.warning("Lost the lease of %s of the monthly reports for %s before completing it".formatted(lease, month));
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Waits until all reports of a partition have been handled, renewing the lease meanwhile. Every report releases
+     * its permit once handled, so all permits are free when the last one is done.
+     *
+     * @return {@code false} if the lease has been lost to another node while waiting
+     */
+    private boolean awaitReports(Semaphore pending, int maxPending, Lease lease) {
+        boolean held = true;
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (pending.tryAcquire(maxPending, DRAIN_CHECK_MILLIS, TimeUnit.MILLISECONDS)) {
+                    break;
+                }
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+            held = held && jobPartitionLeases.renewIfDue(lease);
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return held && jobPartitionLeases.renewIfDue(lease);
+    }
+
+    private void sendReport(String email, MonthlyTrainingSummary summary, Run run) {
+        try {
+            long renderStart = System.nanoTime();
+            final EmailDto emailDto = emailProvider.sendMail(email, "MONTHLY REPORT", summary);
+            long sendStart = System.nanoTime();
+            renderTimer.record(sendStart - renderStart, TimeUnit.NANOSECONDS);
+            run.renderNanos.addAndGet(sendStart - renderStart);
+
+            emailSender.send(emailDto);
+            long enqueueNanos = System.nanoTime() - sendStart;
+            enqueueTimer.record(enqueueNanos, TimeUnit.NANOSECONDS);
+            run.enqueueNanos.addAndGet(enqueueNanos);
+            sentCounter.increment();
+            run.sent.incrementAndGet();
+        } catch (RuntimeException e) {
+            log.log(Level.WARNING, "Monthly report to %s could not be sent".formatted(email), e);
+            failedCounter.increment();
+            run.failed.incrementAndGet();
+        }
+    }
+
+    private ExecutorService newExecutor(int concurrency) {
+        if (properties.isVirtualThreads()) {
+            try {
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException e) {
+                log.warning("Virtual threads are not supported by the runtime, sending reports from a thread pool");
+            }
+        }
+        AtomicInteger threadCount = new AtomicInteger();
+        return Executors.newFixedThreadPool(concurrency, task -> {
+            Thread thread = new Thread(task, "monthly-report-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private static double meanMillis(AtomicLong nanos, int count) {
+        return count == 0 ? 0 : nanos.get() / 1_000_000.0 / count;
+    }
+
+    /**
+     * Thrown to stop reading the summaries of a partition, whose lease has been lost.
+     */
+    private static final class LeaseLostException extends RuntimeException {
+
+        private LeaseLostException() {
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * Counters of one partition of the job, which are logged when it is done.
+     */
+    private static final class Run {
+        private final AtomicInteger sent = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+        private final AtomicLong renderNanos = new AtomicLong();
+        private final AtomicLong enqueueNanos = new AtomicLong();
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,105 @@
+/*
+ ____            _            _____ _             _     _      ___ ___ ___ ___ ___
+|    \ ___ _____|_|___ ___   |   __| |_ ___ ___  |_|___| |_   | . | . | . |_  |  _|
+|  |  | .'|     | | .'|   |  |__   |  _|  _| . | | | -_| '_|  |_  |_  | . |_  | . |
+|____/|__,|_|_|_|_|__,|_|_|  |_____|_| |_| |___|_| |___|_,_|  |___|___|___|___|___|
+                                               |___|
+ */
+package pl.wsb.fitnesstracker.pagination.api;
+
+import pl.wsb.fitnesstracker.exception.api.BusinessException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Opaque cursor of the {@link KeysetPage}. Holds the values of the sort key of the last element of a page, encoded
+ * as a URL-safe Base64 string, so that clients do not depend on its format.
+ */
+public final class KeysetCursor {
+
+    private static final String SEPARATOR = "|";
+
+    private final String cursor;
+    private final String[] values;
+
+    private KeysetCursor(String cursor, String[] values) {
+        this.cursor = cursor;
+        this.values = values;
+    }
+
+    /**
+     * Encodes the sort key values into a cursor.
+     *
+     * @param values sort key values, their {@link String#valueOf(Object)} representation must not contain {@value #SEPARATOR}
+     * @return opaque cursor
+     */
+    public static String encode(Object... values) {
+        String joined = Arrays.stream(values).map(String::valueOf).collect(Collectors.joining(SEPARATOR));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(joined.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decodes a cursor created by {@link #encode(Object...)}.
+     *
+     * @param cursor opaque cursor
+     * @param size   expected number of sort key values
+     * @return decoded cursor
+     * @throws BusinessException if the cursor is malformed
+     */
+    public static KeysetCursor decode(String cursor, int size) {
+        String[] values;
+        try {
+            values = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(Pattern.quote(SEPARATOR), -1);
+        } catch (IllegalArgumentException e) {
+            throw invalid(cursor);
+        }
+        if (values.length != size) {
+            throw invalid(cursor);
+        }
+        return new KeysetCursor(cursor, values);
+    }
+
+    public long getLong(int index) {
+        try {
+            return Long.parseLong(values[index]);
+        } catch (NumberFormatException e) {
+            throw invalid(cursor);
+        }
+    }
+
+    public double getDouble(int index) {
+        try {
+            return Double.parseDouble(values[index]);
+        } catch (NumberFormatException e) {
+            throw invalid(cursor);
+        }
+    }
+
+    public LocalDate getLocalDate(int index) {
+        try {
+            return LocalDate.parse(values[index]);
+        } catch (DateTimeParseException e) {
+            throw invalid(cursor);
+        }
+    }
+
+    public LocalDateTime getLocalDateTime(int index) {
+        try {
+            return LocalDateTime.parse(values[index]);
+        } catch (DateTimeParseException e) {
+            throw invalid(cursor);
+        }
+    }
+
+    private static BusinessException invalid(String cursor) {
+        return new BusinessException("Invalid page cursor: " + cursor);
+    }
+
+}
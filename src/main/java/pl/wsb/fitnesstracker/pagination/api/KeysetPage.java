@@ -0,0 +1,71 @@
+/*
+ ____            _            _____ _             _     _      ___ ___ ___ ___ ___
+|    \ ___ _____|_|___ ___   |   __| |_ ___ ___  |_|___| |_   | . | . | . |_  |  _|
+|  |  | .'|     | | .'|   |  |__   |  _|  _| . | | | -_| '_|  |_  |_  | . |_  | . |
+|____/|__,|_|_|_|_|__,|_|_|  |_____|_| |_| |___|_| |___|_,_|  |___|___|___|___|___|
+                                               |___|
+ */
+package pl.wsb.fitnesstracker.pagination.api;
+
+import pl.wsb.fitnesstracker.exception.api.BusinessException;
+
+import jakarta.annotation.Nullable;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * One page of a keyset (cursor) paginated result. The {@link #nextCursor()} is an opaque token, that encodes the sort
+ * key of the last element of the page and is passed back to fetch the following page. It is {@code null} on the last page.
+ *
+ * @param content    elements of the page, in the order of the underlying query
+ * @param nextCursor cursor of the next page, or {@code null} if there are no more elements
+ * @param <T>        type of the page elements
+ */
+public record KeysetPage<T>(List<T> content, @Nullable String nextCursor) {
+
+    /**
+     * Name of the HTTP response header carrying the {@link #nextCursor()} of paginated endpoints.
+     */
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    /**
+     * Largest page size accepted by the paginated queries.
+     */
+    public static final int MAX_LIMIT = 1000;
+
+    /**
+     * Creates a page out of the query result, that was fetched with one element more than the requested limit.
+     * The additional element is only used to tell if there is a next page and is not part of the content.
+     *
+     * @param rows     query result limited to {@code limit + 1} rows
+     * @param limit    requested page size
+     * @param cursorOf function encoding the cursor of the given (last) element of the page
+     * @param <T>      type of the page elements
+     * @return page with at most {@code limit} elements
+     */
+    public static <T> KeysetPage<T> of(List<T> rows, int limit, Function<T, String> cursorOf) {
+        if (rows.size() <= limit) {
+            return new KeysetPage<>(rows, null);
+        }
+        List<T> content = rows.subList(0, limit);
+        return new KeysetPage<>(content, cursorOf.apply(content.get(limit - 1)));
+    }
+
+    /**
+     * Validates the requested page size.
+     *
+     * @param limit requested page size
+     * @throws BusinessException if the limit is not in range {@code [1, MAX_LIMIT]}
+     */
+    public static void checkLimit(int limit) {
+        if (limit < 1 || limit > MAX_LIMIT) {
+            throw new BusinessException("Page limit must be between 1 and %d, was %d".formatted(MAX_LIMIT, limit));
+        }
+    }
+
+    public <R> KeysetPage<R> map(Function<T, R> mapper) {
+        return new KeysetPage<>(content.stream().map(mapper).toList(), nextCursor);
+    }
+
+}
@@ -0,0 +1,37 @@
+/*
+ ____            _            _____ _             _     _      ___ ___ ___ ___ ___
+|    \ ___ _____|_|___ ___   |   __| |_ ___ ___  |_|___| |_   | . | . | . |_  |  _|
+|  |  | .'|     | | .'|   |  |__   |  _|  _| . | | | -_| '_|  |_  |_  | . |_  | . |
+|____/|__,|_|_|_|_|__,|_|_|  |_____|_| |_| |___|_| |___|_,_|  |___|___|___|___|___|
+                                               |___|
+ */
+package pl.wsb.fitnesstracker.pagination.api;
+
+import org.springframework.http.ResponseEntity;
+
+import java.util.List;
+
+/**
+ * HTTP responses of the keyset paginated endpoints.
+ */
+public final class KeysetPages {
+
+    private KeysetPages() {
+    }
+
+    /**
+     * Creates the response of a paginated endpoint, with the content of the page as the body and the cursor of the
+     * next page in the {@value KeysetPage#NEXT_CURSOR_HEADER} header.
+     *
+     * @param page page to be returned
+     * @param <T>  type of the page elements
+     * @return response with the content of the page
+     */
+    public static <T> ResponseEntity<List<T>> toResponse(KeysetPage<T> page) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.nextCursor() != null) {
+            response.header(KeysetPage.NEXT_CURSOR_HEADER, page.nextCursor());
+        }
+        return response.body(page.content());
+    }
+}
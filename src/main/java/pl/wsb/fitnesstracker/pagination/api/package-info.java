@@ -0,0 +1,4 @@
+@NonNullByDefault
+package pl.wsb.fitnesstracker.pagination.api;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
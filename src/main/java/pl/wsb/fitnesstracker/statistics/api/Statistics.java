@@ -13,7 +13,9 @@ import jakarta.persistence.*;
 import lombok.*;
 
 @Entity
-@Table(name = "statistics")
+@Table(name = "statistics",
+       uniqueConstraints = @UniqueConstraint(name = "uk_statistics_user_id", columnNames = "user_id"),
+       indexes = @Index(name = "idx_statistics_total_calories_burned", columnList = "total_calories_burned desc, id desc"))
 @NoArgsConstructor(access = AccessLevel.PROTECTED)
 @ToString
 public class Statistics {
@@ -21,8 +23,9 @@ public class Statistics {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "user_id")
+    @ToString.Exclude
     private User user;
 
     @Column(name = "total_trainings", nullable = false)
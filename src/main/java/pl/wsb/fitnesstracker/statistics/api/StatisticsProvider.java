@@ -7,6 +7,10 @@
  */
 package pl.wsb.fitnesstracker.statistics.api;
 
+import pl.wsb.fitnesstracker.pagination.api.KeysetPage;
+
+import jakarta.annotation.Nullable;
+
 import java.util.List;
 import java.util.Optional;
 
@@ -37,11 +41,23 @@ public interface StatisticsProvider {
     Optional<Statistics> getStatisticsForUser(Long userId);
 
     /**
-     * Retrieves a list of statistics with more burned calories than the given value.
+     * Retrieves a list of statistics with more burned calories than the given value, ordered by burned calories
+     * descending.
      *
      * @param burnedCalories the burned calories to search for
      * @return a list of statistics with more burned calories than the given value
      */
     List<Statistics> getMoreCaloriesBurned(Long burnedCalories);
 
+    /**
+     * Retrieves one page of statistics with more burned calories than the given value, ordered by burned calories
+     * descending, e.g. the top burners.
+     *
+     * @param burnedCalories the burned calories to search for
+     * @param cursor         {@link KeysetPage#nextCursor()} of the previous page, or {@code null} for the first page
+     * @param limit          maximum number of statistics on the page, at most {@link KeysetPage#MAX_LIMIT}
+     * @return page of statistics with more burned calories than the given value
+     */
+    KeysetPage<Statistics> getMoreCaloriesBurned(Long burnedCalories, @Nullable String cursor, int limit);
+
 }
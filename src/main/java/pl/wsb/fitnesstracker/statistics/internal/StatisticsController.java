@@ -7,9 +7,14 @@
  */
 package pl.wsb.fitnesstracker.statistics.internal;
 
+import pl.wsb.fitnesstracker.exception.api.NotFoundException;
+import pl.wsb.fitnesstracker.pagination.api.KeysetPage;
+import pl.wsb.fitnesstracker.pagination.api.KeysetPages;
 import pl.wsb.fitnesstracker.statistics.api.Statistics;
 
+import jakarta.annotation.Nullable;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
@@ -22,10 +27,13 @@ import java.util.List;
 public class StatisticsController {
     private final StatisticsServiceImpl statisticsService;
     private final StatisticsMapper statisticsMapper;
+    private final StatisticsRebuildJob statisticsRebuildJob;
 
-    public StatisticsController(StatisticsServiceImpl statisticsService, StatisticsMapper statisticsMapper) {
+    public StatisticsController(StatisticsServiceImpl statisticsService, StatisticsMapper statisticsMapper,
+                                StatisticsRebuildJob statisticsRebuildJob) {
         this.statisticsService = statisticsService;
         this.statisticsMapper = statisticsMapper;
+        this.statisticsRebuildJob = statisticsRebuildJob;
     }
 
     /**
@@ -69,6 +77,59 @@ public class StatisticsController {
                 .toList();
     }
 
+    /**
+     * Retrieves one page of statistics with more burned calories than the given value, ordered by burned calories
+     * descending. The cursor of the next page is returned in the {@value KeysetPage#NEXT_CURSOR_HEADER} header.
+     *
+     * @param burnedCalories the burned calories to search for
+     * @param limit          maximum number of statistics on the page
+     * @param cursor         cursor of the previous page, or none for the first page
+     * @return a page of DTO representations of statistics
+     */
+    @GetMapping(path = "/moreCaloriesBurned", params = "limit")
+    public ResponseEntity<List<StatisticsDto>> getMoreCaloriesBurned(@RequestParam("burnedCalories") Long burnedCalories,
+                                                                     @RequestParam int limit,
+                                                                     @RequestParam(required = false) @Nullable String cursor) {
+        return KeysetPages.toResponse(statisticsService.getMoreCaloriesBurned(burnedCalories, cursor, limit)
+                .map(statisticsMapper::toDto));
+    }
+
+    /**
+     * Starts recomputing all statistics from the trainings in the background.
+     *
+     * @param parallelism number of user ID ranges rebuilt at the same time, the configured one if not given
+     * @return status of the started rebuild
+     */
+    @PostMapping("/rebuild")
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    public StatisticsRebuildStatus startRebuild(@RequestParam(required = false) @Nullable Integer parallelism) {
+        return statisticsRebuildJob.start(parallelism);
+    }
+
+    /**
+     * Retrieves the progress of the last started statistics rebuild.
+     *
+     * @return status of the rebuild
+     */
+    @GetMapping("/rebuild")
+    public StatisticsRebuildStatus getRebuildStatus() {
+        return statisticsRebuildJob.getStatus().orElseThrow(StatisticsController::rebuildNotStarted);
+    }
+
+    /**
+     * Cancels the running statistics rebuild, the user ID ranges being rebuilt are completed.
+     *
+     * @return status of the rebuild
+     */
+    @DeleteMapping("/rebuild")
+    public StatisticsRebuildStatus cancelRebuild() {
+        return statisticsRebuildJob.cancel().orElseThrow(StatisticsController::rebuildNotStarted);
+    }
+
+    private static NotFoundException rebuildNotStarted() {
+        return new NotFoundException("Statistics rebuild has not been started");
+    }
+
     /**
      * Adds a new statistics entry.
      *
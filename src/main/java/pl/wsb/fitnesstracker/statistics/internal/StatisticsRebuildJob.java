@@ -0,0 +1,243 @@
+/*
+ ____            _            _____ _             _     _      ___ ___ ___ ___ ___
+|    \ ___ _____|_|___ ___   |   __| |_ ___ ___  |_|___| |_   | . | . | . |_  |  _|
+|  |  | .'|     | | .'|   |  |__   |  _|  _| . | | | -_| '_|  |_  |_  | . |_  | . |
+|____/|__,|_|_|_|_|__,|_|_|  |_____|_| |_| |___|_| |___|_,_|  |___|___|___|___|___|
+                                               |___|
+ */
+package pl.wsb.fitnesstracker.statistics.internal;
+
+import pl.wsb.fitnesstracker.exception.api.BusinessException;
+import pl.wsb.fitnesstracker.statistics.internal.StatisticsRebuildStatus.State;
+
+import jakarta.annotation.Nullable;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Recomputes all statistics from the trainings, e.g. after data has been imported or corrected. The user ID space is
+ * split into ranges of {@link StatisticsRebuildProperties#getRangeSize()} IDs. Every range is aggregated with
+ * a GROUP BY query over the trainings of its users and written back with JDBC batches in its own transaction,
+ * the ranges are processed by a bounded pool of threads. Only one rebuild runs at a time.
+ * <p>
+ * The statistics of a range are locked before its trainings are aggregated, so a training written concurrently is
+ * counted either by the rebuild or by the incremental update of its transaction, never by both or neither. Only
+ * statistics created for a user for the first time while the range of the user is rebuilt may miss such a training.
+ */
+@Component
+class StatisticsRebuildJob {
+
+    private static final Logger log = Logger.getLogger(StatisticsRebuildJob.class.getName());
+
+    /**
+     * Largest number of user ID ranges, that may be rebuilt at the same time.
+     */
+    static final int MAX_PARALLELISM = 64;
+
+    /**
+     * Number of statistics written with one JDBC batch.
+     */
+    static final int WRITE_BATCH_SIZE = 1000;
+
+    private static final String LOCK_STATISTICS = "select id from statistics where user_id >= ? and user_id < ? for update";
+
+    private static final String AGGREGATE_TRAININGS = """
+            select user_id, count(*) as trainings, sum(distance) as distance
+            from trainings
+            where user_id >= ? and user_id < ?
+            group by user_id""";
+
+    private static final String RESET_STATISTICS = """
+            update statistics s set total_trainings = 0, total_distance = 0
+            where s.user_id >= ? and s.user_id < ? and (s.total_trainings <> 0 or s.total_distance <> 0)
+            and not exists (select 1 from trainings t where t.user_id = s.user_id)""";
+
+    private static final String WRITE_STATISTICS = """
+            merge into statistics s
+            using (select cast(? as bigint) as user_id, cast(? as int) as total_trainings,
+                          cast(? as double precision) as total_distance) d
+            on s.user_id = d.user_id
+            when matched then update set total_trainings = d.total_trainings, total_distance = d.total_distance
+            when not matched then insert (user_id, total_trainings, total_distance, total_calories_burned)
+                                  values (d.user_id, d.total_trainings, d.total_distance, 0)""";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final StatisticsRebuildProperties properties;
+
+    @Nullable
+    private volatile Run run;
+
+    StatisticsRebuildJob(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                         StatisticsRebuildProperties properties) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.properties = properties;
+    }
+
+    /**
+     * Starts rebuilding all statistics in the background.
+     *
+     * @param parallelism number of user ID ranges rebuilt at the same time, {@code null} for the configured one
+     * @return status of the started rebuild
+     * @throws BusinessException if a rebuild is already running or the parallelism is out of range
+     */
+    synchronized StatisticsRebuildStatus start(@Nullable Integer parallelism) {
+        Run currentRun = run;
+        if (currentRun != null && currentRun.state == State.RUNNING) {
+            throw new BusinessException("Statistics rebuild is already running");
+        }
+        int threads = parallelism == null ? properties.getParallelism() : parallelism;
+        if (threads < 1 || threads > MAX_PARALLELISM) {
+            throw new BusinessException("Parallelism must be between 1 and %d, was %d".formatted(MAX_PARALLELISM, threads));
+        }
+
+        Run newRun = new Run(threads, userIdRanges());
+        run = newRun;
+        newRun.start();
+        return newRun.status();
+    }
+
+    /**
+     * @return status of the last started rebuild, empty if none has been started
+     */
+    Optional<StatisticsRebuildStatus> getStatus() {
+        return Optional.ofNullable(run).map(Run::status);
+    }
+
+    /**
+     * Cancels the running rebuild. Ranges being rebuilt are completed, the remaining ones are skipped.
+     *
+     * @return status of the last started rebuild, empty if none has been started
+     */
+    Optional<StatisticsRebuildStatus> cancel() {
+        Run currentRun = run;
+        if (currentRun != null) {
+            currentRun.cancelled.set(true);
+        }
+        return getStatus();
+    }
+
+    private List<long[]> userIdRanges() {
+        Map<String, Object> bounds = jdbcTemplate.queryForMap("select min(id) as min_id, max(id) as max_id from users");
+        List<long[]> ranges = new ArrayList<>();
+        if (bounds.get("min_id") == null) {
+            return ranges;
+        }
+        long minId = ((Number) bounds.get("min_id")).longValue();
+        long maxId = ((Number) bounds.get("max_id")).longValue();
+        for (long from = minId; from <= maxId; from += properties.getRangeSize()) {
+            ranges.add(new long[]{from, Math.min(from + properties.getRangeSize(), maxId + 1)});
+        }
+        return ranges;
+    }
+
+    private List<UserTotals> rebuildRange(long fromUserId, long toUserId) {
+        jdbcTemplate.query(LOCK_STATISTICS, (RowCallbackHandler) resultSet -> { }, fromUserId, toUserId);
+        List<UserTotals> totals = jdbcTemplate.query(AGGREGATE_TRAININGS,
+                (resultSet, rowNum) -> new UserTotals(resultSet.getLong("user_id"), resultSet.getInt("trainings"),
+                        resultSet.getDouble("distance")),
+                fromUserId, toUserId);
+        jdbcTemplate.update(RESET_STATISTICS, fromUserId, toUserId);
+        jdbcTemplate.batchUpdate(WRITE_STATISTICS, totals, WRITE_BATCH_SIZE, (statement, userTotals) -> {
+            statement.setLong(1, userTotals.userId());
+            statement.setInt(2, userTotals.trainings());
+            statement.setDouble(3, userTotals.distance());
+        });
+        return totals;
+    }
+
+    private record UserTotals(long userId, int trainings, double distance) {
+    }
+
+    private final class Run {
+
+        private final int parallelism;
+        private final List<long[]> ranges;
+        private final ExecutorService executor;
+        private final Instant startedAt = Instant.now();
+        private final AtomicBoolean cancelled = new AtomicBoolean();
+        private final AtomicInteger completedRanges = new AtomicInteger();
+        private final AtomicLong usersUpdated = new AtomicLong();
+        private final AtomicLong trainingsAggregated = new AtomicLong();
+        private final AtomicReference<String> failure = new AtomicReference<>();
+        private volatile Instant finishedAt;
+        private volatile State state = State.RUNNING;
+
+        Run(int parallelism, List<long[]> ranges) {
+            this.parallelism = parallelism;
+            this.ranges = ranges;
+            AtomicInteger threadCount = new AtomicInteger();
+            this.executor = Executors.newFixedThreadPool(parallelism, task -> {
+                Thread thread = new Thread(task, "statistics-rebuild-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        void start() {
+            log.info("Rebuilding statistics of %d user ID ranges with parallelism %d".formatted(ranges.size(), parallelism));
+            CompletableFuture.allOf(ranges.stream()
+                            .map(range -> CompletableFuture.runAsync(() -> rebuild(range[0], range[1]), executor))
+                            .toArray(CompletableFuture[]::new))
+                    .whenComplete((result, e) -> finish());
+        }
+
+        private void rebuild(long fromUserId, long toUserId) {
+            if (cancelled.get()) {
+                return;
+            }
+            try {
+                List<UserTotals> totals = transactionTemplate.execute(status -> rebuildRange(fromUserId, toUserId));
+                usersUpdated.addAndGet(totals.size());
+                trainingsAggregated.addAndGet(totals.stream().mapToLong(UserTotals::trainings).sum());
+                completedRanges.incrementAndGet();
+            } catch (RuntimeException e) {
+                log.log(Level.WARNING, "Rebuild of statistics of users [%d, %d) failed".formatted(fromUserId, toUserId), e);
+                failure.compareAndSet(null, e.getMessage());
+                cancelled.set(true);
+            }
+        }
+
+        private void finish() {
+            // the state is written before the end time, which status() reads first
+            state = failure.get() != null ? State.FAILED : cancelled.get() ? State.CANCELLED : State.COMPLETED;
+            Instant finished = Instant.now();
+            finishedAt = finished;
+            executor.shutdown();
+
+            long millis = Math.max(1, Duration.between(startedAt, finished).toMillis());
+            log.info("Statistics rebuild %s: %d of %d ranges, %d users, %d trainings in %d ms, %d trainings/s".formatted(
+                    state, completedRanges.get(), ranges.size(), usersUpdated.get(), trainingsAggregated.get(), millis,
+                    trainingsAggregated.get() * 1000 / millis));
+        }
+
+        StatisticsRebuildStatus status() {
+            Instant finished = finishedAt;
+            return new StatisticsRebuildStatus(finished == null ? State.RUNNING : state, parallelism, ranges.size(),
+                    completedRanges.get(), usersUpdated.get(), trainingsAggregated.get(), startedAt, finished,
+                    failure.get());
+        }
+
+    }
+
+}
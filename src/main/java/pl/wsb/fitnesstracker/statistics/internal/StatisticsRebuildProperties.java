@@ -0,0 +1,45 @@
+/*
+ ____            _            _____ _             _     _      ___ ___ ___ ___ ___
+|    \ ___ _____|_|___ ___   |   __| |_ ___ ___  |_|___| |_   | . | . | . |_  |  _|
+|  |  | .'|     | | .'|   |  |__   |  _|  _| . | | | -_| '_|  |_  |_  | . |_  | . |
+|____/|__,|_|_|_|_|__,|_|_|  |_____|_| |_| |___|_| |___|_,_|  |___|___|___|___|___|
+                                               |___|
+ */
+package pl.wsb.fitnesstracker.statistics.internal;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Configuration of the {@link StatisticsRebuildJob}.
+ */
+@ConfigurationProperties(prefix = "statistics.rebuild")
+class StatisticsRebuildProperties {
+
+    /**
+     * Number of user ID ranges rebuilt at the same time, unless given when starting the job.
+     */
+    private final int parallelism;
+
+    /**
+     * Number of user IDs in a range, which is aggregated and written in one transaction.
+     */
+    private final int rangeSize;
+
+    StatisticsRebuildProperties(@DefaultValue("4") int parallelism, @DefaultValue("10000") int rangeSize) {
+        if (parallelism < 1 || rangeSize < 1) {
+            throw new IllegalArgumentException("Rebuild parallelism and range size must be positive, were %d and %d"
+                    .formatted(parallelism, rangeSize));
+        }
+        this.parallelism = parallelism;
+        this.rangeSize = rangeSize;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public int getRangeSize() {
+        return rangeSize;
+    }
+}
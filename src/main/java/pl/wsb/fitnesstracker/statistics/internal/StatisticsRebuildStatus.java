@@ -0,0 +1,44 @@
+/*
+ ____            _            _____ _             _     _      ___ ___ ___ ___ ___
+|    \ ___ _____|_|___ ___   |   __| |_ ___ ___  |_|___| |_   | . | . | . |_  |  _|
+|  |  | .'|     | | .'|   |  |__   |  _|  _| . | | | -_| '_|  |_  |_  | . |_  | . |
+|____/|__,|_|_|_|_|__,|_|_|  |_____|_| |_| |___|_| |___|_,_|  |___|___|___|___|___|
+                                                      |___|
+ */
+package pl.wsb.fitnesstracker.statistics.internal;
+
+import jakarta.annotation.Nullable;
+
+import java.time.Instant;
+
+/**
+ * Progress of a {@link StatisticsRebuildJob} run.
+ *
+ * @param state               state of the run
+ * @param parallelism         number of user ID ranges rebuilt at the same time
+ * @param totalRanges         number of user ID ranges to rebuild
+ * @param completedRanges     number of rebuilt user ID ranges
+ * @param usersUpdated        number of users, whose statistics were written
+ * @param trainingsAggregated number of trainings counted into the written statistics
+ * @param startedAt           start of the run
+ * @param finishedAt          end of the run, {@code null} while running
+ * @param failure             reason of the failure of the run, if it failed
+ */
+public record StatisticsRebuildStatus(State state,
+                                      int parallelism,
+                                      int totalRanges,
+                                      int completedRanges,
+                                      long usersUpdated,
+                                      long trainingsAggregated,
+                                      Instant startedAt,
+                                      @Nullable Instant finishedAt,
+                                      @Nullable String failure) {
+
+    public enum State {
+        RUNNING,
+        COMPLETED,
+        CANCELLED,
+        FAILED
+    }
+
+}
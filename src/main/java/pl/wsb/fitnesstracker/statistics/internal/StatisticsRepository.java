@@ -9,23 +9,125 @@ package pl.wsb.fitnesstracker.statistics.internal;
 
 import pl.wsb.fitnesstracker.statistics.api.Statistics;
 
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 /**
- * Repository for {@link Statistics}.
+ * Repository for {@link Statistics}. A user has at most one statistics, the unique index on {@code user_id} serves
+ * lookups by user. The user of statistics is lazy, finders returning statistics for {@link StatisticsMapper} fetch it
+ * in the same statement.
  */
 public interface StatisticsRepository extends JpaRepository<Statistics, Long> {
+
+    @Override
+    @EntityGraph(attributePaths = "user")
+    List<Statistics> findAll();
+
+    @Override
+    @EntityGraph(attributePaths = "user")
+    Optional<Statistics> findById(Long id);
+
+    /**
+     * Returns statistics of the given user together with the user, with a single indexed lookup. The condition is on
+     * the {@code user_id} column itself, a derived query would put it on the joined user, which rules out the index.
+     *
+     * @param userId ID of the user
+     * @return statistics of the user, if there are any
+     */
+    @EntityGraph(attributePaths = "user")
+    @Query("select s from Statistics s where s.user.id = :userId")
+    Optional<Statistics> findByUserId(Long userId);
+
+    @Query("select count(s) > 0 from Statistics s where s.user.id = :userId")
+    boolean existsByUserId(Long userId);
+
+    /**
+     * Returns statistics with more burned calories than the given value, which follow the given keyset position,
+     * ordered by burned calories and ID, both descending. Both the range and the order are served by the
+     * {@code (total_calories_burned desc, id desc)} index, so only the returned rows are read.
+     *
+     * @param burnedCalories  exclusive lower bound of the burned calories
+     * @param beforeCalories  burned calories of the last statistics of the previous page, {@link Integer#MAX_VALUE} for the first page
+     * @param beforeId        ID of the last statistics of the previous page, {@link Long#MAX_VALUE} for the first page
+     * @param limit           maximum number of statistics to return
+     * @return statistics ordered by burned calories and ID, both descending
+     */
+    @EntityGraph(attributePaths = "user")
+    @Query("""
+            select s from Statistics s
+            where s.totalCaloriesBurned > :burnedCalories
+            and s.totalCaloriesBurned <= :beforeCalories and (s.totalCaloriesBurned < :beforeCalories or s.id < :beforeId)
+            order by s.totalCaloriesBurned desc, s.id desc""")
+    List<Statistics> findByMoreBurnedCalories(int burnedCalories, int beforeCalories, long beforeId, Limit limit);
+
+    /**
+     * Adds the given deltas to the statistics of the user, or creates them out of the deltas if the user has none yet,
+     * with a single atomic statement. Concurrent writers do not lose each other's updates, as no values are read
+     * into the application. Statistics already loaded into the persistence context are not refreshed.
+     *
+     * @param userId    ID of the user
+     * @param trainings delta of the number of trainings
+     * @param distance  delta of the total distance
+     * @return number of changed statistics
+     */
+    @Modifying(flushAutomatically = true)
+    @Query(nativeQuery = true, value = """
+            merge into statistics s
+            using (select cast(:userId as bigint) as user_id) d
+            on s.user_id = d.user_id
+            when matched then update set total_trainings = s.total_trainings + :trainings,
+                                         total_distance = s.total_distance + :distance
+            when not matched then insert (user_id, total_trainings, total_distance, total_calories_burned)
+                                  values (d.user_id, :trainings, :distance, 0)""")
+    int addTrainings(Long userId, int trainings, double distance);
+
+    /**
+     * Subtracts one training with the given distance from the statistics of the user with a single atomic statement,
+     * unless that would make them negative. Unlike {@link #addTrainings(Long, int, double)} it never creates
+     * statistics, as a user without statistics has no counted training to subtract, e.g. one stored before
+     * the statistics were kept up to date.
+     *
+     * @param userId   ID of the user
+     * @param distance distance of the training
+     * @return number of changed statistics, {@code 0} if the user has none or they would become negative
+     */
+    @Modifying(flushAutomatically = true)
+    @Query(nativeQuery = true, value = """
+            update statistics
+            set total_trainings = total_trainings - 1,
+                total_distance = total_distance - :distance
+            where user_id = :userId and total_trainings >= 1 and total_distance >= :distance""")
+    int removeTraining(Long userId, double distance);
+
+    /**
+     * Subtracts one training with the given distance from the statistics of the user, even if they become negative.
+     *
+     * @param userId   ID of the user
+     * @param distance distance of the training
+     * @return number of changed statistics, {@code 0} if the user has none
+     */
+    @Modifying(flushAutomatically = true)
+    @Query(nativeQuery = true, value = """
+            update statistics
+            set total_trainings = total_trainings - 1,
+                total_distance = total_distance - :distance
+            where user_id = :userId""")
+    int removeTrainingBelowZero(Long userId, double distance);
+
     /**
-     * Returns statistics with the given burned calories.
+     * Deletes statistics of the given users with a single statement.
      *
-     * @param burnedCalories burned calories
-     * @return statistics with the given burned calories
+     * @param userIds IDs of the users
+     * @return number of deleted statistics
      */
-    default List<Statistics> findByMoreBurnedCalories(Long burnedCalories) {
-        return findAll().stream()
-                .filter(statistics -> statistics.getTotalCaloriesBurned() > burnedCalories)
-                .toList();
-    }
+    @Modifying(flushAutomatically = true)
+    @Query("delete from Statistics s where s.user.id in :userIds")
+    int deleteByUserIdIn(Collection<Long> userIds);
 }
\ No newline at end of file
@@ -7,11 +7,18 @@
  */
 package pl.wsb.fitnesstracker.statistics.internal;
 
+import pl.wsb.fitnesstracker.pagination.api.KeysetCursor;
+import pl.wsb.fitnesstracker.pagination.api.KeysetPage;
 import pl.wsb.fitnesstracker.statistics.api.*;
+import pl.wsb.fitnesstracker.training.api.TrainingCreatedEvent;
+import pl.wsb.fitnesstracker.training.api.TrainingUpdatedEvent;
+import pl.wsb.fitnesstracker.user.api.UserDeletionEvent;
+import jakarta.annotation.Nullable;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
-import java.util.Objects;
 import java.util.Optional;
 import java.util.logging.Logger;
 
@@ -46,15 +53,37 @@ public class StatisticsServiceImpl implements StatisticsService, StatisticsProvi
     @Override
     public Optional<Statistics> getStatisticsForUser(Long userId)
     {
-        return statisticsRepository.findAll()
-                .stream()
-                .filter(statistic -> Objects.equals(statistic.getUser().getId(), userId))
-                .findFirst();
+        return statisticsRepository.findByUserId(userId);
     }
 
     @Override
     public List<Statistics> getMoreCaloriesBurned(Long burnedCalories) {
-        return statisticsRepository.findByMoreBurnedCalories(burnedCalories);
+        return statisticsRepository.findByMoreBurnedCalories(toCalories(burnedCalories), Integer.MAX_VALUE,
+                Long.MAX_VALUE, Limit.unlimited());
+    }
+
+    @Override
+    public KeysetPage<Statistics> getMoreCaloriesBurned(Long burnedCalories, @Nullable String cursor, int limit) {
+        KeysetPage.checkLimit(limit);
+
+        int beforeCalories = Integer.MAX_VALUE;
+        long beforeId = Long.MAX_VALUE;
+        if (cursor != null) {
+            KeysetCursor keysetCursor = KeysetCursor.decode(cursor, 2);
+            beforeCalories = toCalories(keysetCursor.getLong(0));
+            beforeId = keysetCursor.getLong(1);
+        }
+
+        List<Statistics> statistics = statisticsRepository.findByMoreBurnedCalories(toCalories(burnedCalories),
+                beforeCalories, beforeId, Limit.of(limit + 1));
+        return KeysetPage.of(statistics, limit, last -> KeysetCursor.encode(last.getTotalCaloriesBurned(), last.getId()));
+    }
+
+    /**
+     * Clamps the requested calories to the range of the {@code total_calories_burned} column.
+     */
+    private static int toCalories(long calories) {
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(calories, Integer.MAX_VALUE));
     }
 
     /**
@@ -81,6 +110,9 @@ public class StatisticsServiceImpl implements StatisticsService, StatisticsProvi
         if (statistics.getId() != null) {
             throw new IllegalArgumentException("Training id is already set");
         }
+        if (statisticsRepository.existsByUserId(statistics.getUser().getId())) {
+            throw new IllegalArgumentException("Statistics of user " + statistics.getUser().getId() + " already exist");
+        }
 
         statisticsRepository.save(statistics);
     }
@@ -105,4 +137,42 @@ public class StatisticsServiceImpl implements StatisticsService, StatisticsProvi
     public void deleteStatistics(Long id) {
         statisticsRepository.deleteById(id);
     }
+
+    /**
+     * Counts the created training into the statistics of its user.
+     *
+     * @param event event of the created training
+     */
+    @EventListener
+    void onTrainingCreated(TrainingCreatedEvent event) {
+        statisticsRepository.addTrainings(event.userId(), 1, event.distance());
+    }
+
+    /**
+     * Reverts the previous values of the updated training in the statistics of its previous user, if they exist,
+     * then counts the new values into the statistics of its current user. Statistics, which do not count the training,
+     * e.g. because they were seeded by hand, become negative and are logged; they are corrected by a rebuild.
+     *
+     * @param event event of the updated training
+     */
+    @EventListener
+    void onTrainingUpdated(TrainingUpdatedEvent event) {
+        if (statisticsRepository.removeTraining(event.previousUserId(), event.previousDistance()) == 0
+                && statisticsRepository.removeTrainingBelowZero(event.previousUserId(), event.previousDistance()) == 1) {
+            Logger.getLogger(StatisticsServiceImpl.class.getName()).warning(
+                    "Statistics of user %d became negative after reverting training %d, they need to be rebuilt"
+                            .formatted(event.previousUserId(), event.trainingId()));
+        }
+        statisticsRepository.addTrainings(event.userId(), 1, event.distance());
+    }
+
+    /**
+     * Deletes statistics of the users being deleted.
+     *
+     * @param event event with IDs of the users being deleted
+     */
+    @EventListener
+    void onUserDeletion(UserDeletionEvent event) {
+        statisticsRepository.deleteByUserIdIn(event.userIds());
+    }
 }
\ No newline at end of file
@@ -0,0 +1,83 @@
+/*
+ ____            _            _____ _             _     _      ___ ___ ___ ___ ___
+|    \ ___ _____|_|___ ___   |   __| |_ ___ ___  |_|___| |_   | . | . | . |_  |  _|
+|  |  | .'|     | | .'|   |  |__   |  _|  _| . | | | -_| '_|  |_  |_  | . |_  | . |
+|____/|__,|_|_|_|_|__,|_|_|  |_____|_| |_| |___|_| |___|_,_|  |___|___|___|___|___|
+                                               |___|
+ */
+package pl.wsb.fitnesstracker.training.api;
+
+import pl.wsb.fitnesstracker.training.internal.ActivityType;
+
+import java.time.YearMonth;
+import java.util.List;
+
+/**
+ * Summary of the trainings of a user in one month, broken down by activity.
+ *
+ * @param month      month of the trainings' start times
+ * @param activities summaries of the activities the user trained in, ordered by activity
+ */
+public record MonthlyTrainingSummary(YearMonth month, List<ActivitySummary> activities) {
+
+    public int trainings() {
+        int trainings = 0;
+        for (ActivitySummary activity : activities) {
+            trainings += activity.trainings();
+        }
+        return trainings;
+    }
+
+    public double totalDistance() {
+        double distance = 0;
+        for (ActivitySummary activity : activities) {
+            distance += activity.totalDistance();
+        }
+        return distance;
+    }
+
+    public long totalDurationSeconds() {
+        long seconds = 0;
+        for (ActivitySummary activity : activities) {
+            seconds += activity.totalDurationSeconds();
+        }
+        return seconds;
+    }
+
+    /**
+     * @return longest distance of a single training of the month
+     */
+    public double longestDistance() {
+        double longest = 0;
+        for (ActivitySummary activity : activities) {
+            longest = Math.max(longest, activity.longestDistance());
+        }
+        return longest;
+    }
+
+    /**
+     * @return highest average speed of a single training of the month
+     */
+    public double highestAverageSpeed() {
+        double highest = 0;
+        for (ActivitySummary activity : activities) {
+            highest = Math.max(highest, activity.highestAverageSpeed());
+        }
+        return highest;
+    }
+
+    /**
+     * Summary of the trainings of one activity.
+     *
+     * @param activityType         activity of the trainings
+     * @param trainings            number of trainings
+     * @param totalDistance        sum of the distances
+     * @param totalDurationSeconds sum of the durations in seconds
+     * @param longestDistance      longest distance of a single training
+     * @param highestAverageSpeed  highest average speed of a single training
+     */
+    public record ActivitySummary(ActivityType activityType, int trainings, double totalDistance,
+                                  long totalDurationSeconds, double longestDistance, double highestAverageSpeed) {
+    }
+
+}
@@ -10,21 +10,30 @@ package pl.wsb.fitnesstracker.training.api;
 import pl.wsb.fitnesstracker.training.internal.ActivityType;
 import pl.wsb.fitnesstracker.user.api.User;
 
+import jakarta.annotation.Nullable;
 import jakarta.persistence.*;
 import lombok.AccessLevel;
 import lombok.NoArgsConstructor;
 import lombok.ToString;
 
 import java.time.LocalDateTime;
+import java.util.UUID;
 
 @Entity
-@Table(name = "trainings")
+@Table(name = "trainings",
+       indexes = {
+               @Index(name = "idx_trainings_user_id_start_time", columnList = "user_id, start_time, id"),
+               @Index(name = "idx_trainings_user_id_activity_type_start_time", columnList = "user_id, activity_type, start_time, id"),
+               @Index(name = "idx_trainings_activity_type_start_time", columnList = "activity_type, start_time, id"),
+               @Index(name = "idx_trainings_start_time", columnList = "start_time, id")
+       })
 @NoArgsConstructor(access = AccessLevel.PROTECTED)
 @ToString
 public class Training {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "trainings_seq")
+    @SequenceGenerator(name = "trainings_seq", sequenceName = "trainings_seq", allocationSize = 50)
     private Long id;
 
     public LocalDateTime getStartTime() {
@@ -55,6 +64,15 @@ public class Training {
         return averageSpeed;
     }
 
+    @Nullable
+    public UUID getSessionId() {
+        return sessionId;
+    }
+
+    public void setSessionId(@Nullable UUID sessionId) {
+        this.sessionId = sessionId;
+    }
+
     public void setId(Long id) {
         this.id = id;
     }
@@ -83,8 +101,9 @@ public class Training {
         this.averageSpeed = averageSpeed;
     }
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "user_id")
+    @ToString.Exclude
     private User user;
 
     @Column(name = "start_time", nullable = false)
@@ -103,6 +122,13 @@ public class Training {
     @Column(name = "average_speed")
     private double averageSpeed;
 
+    /**
+     * Identifier of the training generated by the client, which makes retried creates idempotent.
+     */
+    @Column(name = "session_id", unique = true, updatable = false)
+    @Nullable
+    private UUID sessionId;
+
     /**
      * Constructs a new training session with the specified details.
      *
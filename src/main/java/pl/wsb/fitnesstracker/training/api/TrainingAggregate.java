@@ -0,0 +1,24 @@
+/*
+ ____            _            _____ _             _     _      ___ ___ ___ ___ ___
+|    \ ___ _____|_|___ ___   |   __| |_ ___ ___  |_|___| |_   | . | . | . |_  |  _|
+|  |  | .'|     | | .'|   |  |__   |  _|  _| . | | | -_| '_|  |_  |_  | . |_  | . |
+|____/|__,|_|_|_|_|__,|_|_|  |_____|_| |_| |___|_| |___|_,_|  |___|___|___|___|___|
+                                               |___|
+ */
+package pl.wsb.fitnesstracker.training.api;
+
+import java.time.LocalDate;
+
+/**
+ * Summary of the trainings of a user started within one time bucket.
+ *
+ * @param bucketStart          first day of the bucket
+ * @param count                number of trainings
+ * @param totalDistance        sum of the distances
+ * @param totalDurationSeconds sum of the durations in seconds
+ * @param averageSpeed         total distance per hour of the total duration, {@code 0} if the duration is zero
+ */
+public record TrainingAggregate(LocalDate bucketStart, long count, double totalDistance, long totalDurationSeconds,
+                                double averageSpeed) {
+
+}
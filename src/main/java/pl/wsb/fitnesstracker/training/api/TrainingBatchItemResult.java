@@ -0,0 +1,29 @@
+/*
+ ____            _            _____ _             _     _      ___ ___ ___ ___ ___
+|    \ ___ _____|_|___ ___   |   __| |_ ___ ___  |_|___| |_   | . | . | . |_  |  _|
+|  |  | .'|     | | .'|   |  |__   |  _|  _| . | | | -_| '_|  |_  |_  | . |_  | . |
+|____/|__,|_|_|_|_|__,|_|_|  |_____|_| |_| |___|_| |___|_,_|  |___|___|___|___|___|
+                                               |___|
+ */
+package pl.wsb.fitnesstracker.training.api;
+
+import jakarta.annotation.Nullable;
+
+/**
+ * Result of a single training of a batch.
+ *
+ * @param index      zero-based index of the training in the batch
+ * @param trainingId ID of the created training, {@code null} if it was rejected
+ * @param error      reason why the training was rejected, {@code null} if it was created
+ */
+public record TrainingBatchItemResult(int index, @Nullable Long trainingId, @Nullable String error) {
+
+    public static TrainingBatchItemResult created(int index, Long trainingId) {
+        return new TrainingBatchItemResult(index, trainingId, null);
+    }
+
+    public static TrainingBatchItemResult rejected(int index, String error) {
+        return new TrainingBatchItemResult(index, null, error);
+    }
+
+}
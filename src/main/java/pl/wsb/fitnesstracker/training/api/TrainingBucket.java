@@ -0,0 +1,33 @@
+/*
+ ____            _            _____ _             _     _      ___ ___ ___ ___ ___
+|    \ ___ _____|_|___ ___   |   __| |_ ___ ___  |_|___| |_   | . | . | . |_  |  _|
+|  |  | .'|     | | .'|   |  |__   |  _|  _| . | | | -_| '_|  |_  |_  | . |_  | . |
+|____/|__,|_|_|_|_|__,|_|_|  |_____|_| |_| |___|_| |___|_,_|  |___|___|___|___|___|
+                                               |___|
+ */
+package pl.wsb.fitnesstracker.training.api;
+
+/**
+ * Size of the time buckets, which trainings are aggregated into by their start time.
+ */
+public enum TrainingBucket {
+
+    DAY("DAY"),
+    WEEK("ISO_WEEK"),
+    MONTH("MONTH");
+
+    private final String datetimeField;
+
+    TrainingBucket(String datetimeField) {
+        this.datetimeField = datetimeField;
+    }
+
+    /**
+     * @return datetime field of the SQL {@code DATE_TRUNC} function truncating to the start of the bucket,
+     * weeks start on Monday
+     */
+    public String getDatetimeField() {
+        return datetimeField;
+    }
+
+}
@@ -0,0 +1,29 @@
+/*
+ ____            _            _____ _             _     _      ___ ___ ___ ___ ___
+|    \ ___ _____|_|___ ___   |   __| |_ ___ ___  |_|___| |_   | . | . | . |_  |  _|
+|  |  | .'|     | | .'|   |  |__   |  _|  _| . | | | -_| '_|  |_  |_  | . |_  | . |
+|____/|__,|_|_|_|_|__,|_|_|  |_____|_| |_| |___|_| |___|_,_|  |___|___|___|___|___|
+                                               |___|
+ */
+package pl.wsb.fitnesstracker.training.api;
+
+import pl.wsb.fitnesstracker.training.internal.ActivityType;
+
+import java.time.LocalDateTime;
+
+/**
+ * Event published within the creating transaction after a training has been stored. It is not published for
+ * requests, which turned out to repeat an already stored training.
+ *
+ * @param trainingId   ID of the created training
+ * @param userId       ID of the user of the training
+ * @param distance     distance of the training
+ * @param startTime    start time of the training
+ * @param endTime      end time of the training
+ * @param activityType activity of the training
+ * @param averageSpeed average speed of the training
+ */
+public record TrainingCreatedEvent(Long trainingId, Long userId, double distance, LocalDateTime startTime,
+                                   LocalDateTime endTime, ActivityType activityType, double averageSpeed) {
+
+}
@@ -7,12 +7,19 @@
  */
 package pl.wsb.fitnesstracker.training.api;
 
+import pl.wsb.fitnesstracker.pagination.api.KeysetPage;
 import pl.wsb.fitnesstracker.user.api.User;
 import pl.wsb.fitnesstracker.training.internal.ActivityType;
 
+import jakarta.annotation.Nullable;
+
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
 public interface TrainingProvider {
 
@@ -31,6 +38,40 @@ public interface TrainingProvider {
      */
     List<Training> getTrainingsByUserId(Long userId);
 
+    /**
+     * Retrieves trainings of a user started within a time window, ordered by start time
+     *
+     * @param userId Long
+     * @param from   inclusive lower bound of the start time, {@code null} for no bound
+     * @param to     exclusive upper bound of the start time, {@code null} for no bound
+     * @return List of trainings of the user started within the window
+     */
+    List<Training> getTrainingsByUserId(Long userId, @Nullable LocalDateTime from, @Nullable LocalDateTime to);
+
+    /**
+     * Retrieves one page of trainings of a user started within a time window, ordered by start time
+     *
+     * @param userId Long
+     * @param from   inclusive lower bound of the start time, {@code null} for no bound
+     * @param to     exclusive upper bound of the start time, {@code null} for no bound
+     * @param cursor {@link KeysetPage#nextCursor()} of the previous page, or {@code null} for the first page
+     * @param limit  maximum number of trainings on the page, at most {@link KeysetPage#MAX_LIMIT}
+     * @return page of trainings of the user started within the window
+     */
+    KeysetPage<Training> getTrainingsByUserId(Long userId, @Nullable LocalDateTime from, @Nullable LocalDateTime to,
+                                              @Nullable String cursor, int limit);
+
+    /**
+     * Searches trainings meeting all the given criteria, one page at a time, ordered by start time and ID. Every
+     * combination of the criteria is served by an index.
+     *
+     * @param criteria criteria of the search, {@code null} components are not taken into account
+     * @param cursor   {@link KeysetPage#nextCursor()} of the previous page, or {@code null} for the first page
+     * @param limit    maximum number of trainings on the page, at most {@link KeysetPage#MAX_LIMIT}
+     * @return page of the matching trainings
+     */
+    KeysetPage<Training> searchTrainings(TrainingSearchCriteria criteria, @Nullable String cursor, int limit);
+
     /**
      * Retrieves a trainings with the date after specified argument
      *
@@ -46,5 +87,54 @@ public interface TrainingProvider {
      * @return List of all trainings that are specified with given activityType
      */
     List<Training> getTrainingsByActivityType(ActivityType activityType);
+
+    /**
+     * Aggregates trainings of a user started within a time window into time buckets. The aggregation is computed by
+     * the database, so the result size depends on the number of buckets only.
+     *
+     * @param userId       Long
+     * @param bucket       size of the buckets
+     * @param activityType only trainings of this type are aggregated, {@code null} for all types
+     * @param from         inclusive lower bound of the start time, {@code null} for no bound
+     * @param to           exclusive upper bound of the start time, {@code null} for no bound
+     * @return aggregates of the non-empty buckets, ordered by time
+     */
+    List<TrainingAggregate> getTrainingAggregates(Long userId, TrainingBucket bucket, @Nullable ActivityType activityType,
+                                                  @Nullable LocalDateTime from, @Nullable LocalDateTime to);
+
+    /**
+     * Passes all trainings, ordered by ID, to the given action. Trainings are read from a database cursor and are
+     * detached from the persistence context in batches, so memory use does not grow with the number of trainings.
+     * Must not be called within a transaction with pending changes, as the persistence context gets cleared.
+     *
+     * @param action action to be performed for each training, with its user loaded
+     */
+    void forEachTraining(Consumer<Training> action);
+
+    /**
+     * Passes the training summaries of a month to the given action, one user at a time, ordered by user ID.
+     * The summaries are maintained as trainings are stored, so this reads one precomputed row per user and activity,
+     * regardless of the number of trainings. Users without trainings in the month are skipped.
+     * Must not be called within a transaction with pending changes, as the persistence context gets cleared.
+     *
+     * @param month  month of the trainings' start times
+     * @param action action to be performed for each user with their summary
+     */
+    void forEachUserMonthlySummary(YearMonth month, BiConsumer<User, MonthlyTrainingSummary> action);
+
+    /**
+     * Passes the training summaries of a month to the given action like
+     * {@link #forEachUserMonthlySummary(YearMonth, BiConsumer)}, but only of the users of one partition, with
+     * {@code mod(userId, partitions) = partition}. Processing the partitions {@code 0} to {@code partitions - 1}
+     * separately covers every user exactly once.
+     *
+     * @param month      month of the trainings' start times
+     * @param partition  partition of the users, from {@code 0} to {@code partitions - 1}
+     * @param partitions number of partitions
+     * @param action     action to be performed for each user with their summary
+     * @throws IllegalArgumentException if the partition is not in range
+     */
+    void forEachUserMonthlySummary(YearMonth month, int partition, int partitions,
+                                   BiConsumer<User, MonthlyTrainingSummary> action);
     
 }
@@ -0,0 +1,33 @@
+/*
+ ____            _            _____ _             _     _      ___ ___ ___ ___ ___
+|    \ ___ _____|_|___ ___   |   __| |_ ___ ___  |_|___| |_   | . | . | . |_  |  _|
+|  |  | .'|     | | .'|   |  |__   |  _|  _| . | | | -_| '_|  |_  |_  | . |_  | . |
+|____/|__,|_|_|_|_|__,|_|_|  |_____|_| |_| |___|_| |___|_,_|  |___|___|___|___|___|
+                                               |___|
+ */
+package pl.wsb.fitnesstracker.training.api;
+
+import pl.wsb.fitnesstracker.training.internal.ActivityType;
+
+import jakarta.annotation.Nullable;
+
+import java.time.LocalDateTime;
+
+/**
+ * Criteria of a training search. Every criterion is optional, a training matches if it meets all the given ones.
+ *
+ * @param userId       ID of the user of the training
+ * @param activityType type of the training
+ * @param from         inclusive lower bound of the start time
+ * @param to           exclusive upper bound of the start time
+ * @param minDistance  inclusive lower bound of the distance
+ * @param maxDistance  inclusive upper bound of the distance
+ */
+public record TrainingSearchCriteria(@Nullable Long userId,
+                                     @Nullable ActivityType activityType,
+                                     @Nullable LocalDateTime from,
+                                     @Nullable LocalDateTime to,
+                                     @Nullable Double minDistance,
+                                     @Nullable Double maxDistance) {
+
+}
@@ -9,10 +9,40 @@ package pl.wsb.fitnesstracker.training.api;
 
 import pl.wsb.fitnesstracker.training.internal.TrainingUpdateDto;
 
+import java.time.YearMonth;
+import java.util.List;
+
 public interface TrainingService {
 
+    /**
+     * Largest number of trainings accepted by {@link #createTrainings(List)}.
+     */
+    int MAX_BATCH_SIZE = 1000;
+
     Training createTraining(TrainingUpdateDto training);
 
+    /**
+     * Creates many trainings at once, e.g. uploaded by a device after being offline. Users of the trainings are
+     * looked up with a single query and the trainings are inserted in JDBC batches within one transaction.
+     * Invalid trainings are rejected without affecting the others. Trainings with the session ID of an existing
+     * training, or of an earlier training of the batch, are not created again and report the existing training,
+     * unless that training belongs to another user, in which case they are rejected.
+     *
+     * @param trainings trainings to be created, at most {@value #MAX_BATCH_SIZE}
+     * @return result of every training, in the order of the batch
+     */
+    List<TrainingBatchItemResult> createTrainings(List<TrainingUpdateDto> trainings);
+
     Training updateTraining(Long id, TrainingUpdateDto training);
 
+    /**
+     * Computes the monthly training summaries of all users of a month again from their trainings, e.g. to count
+     * trainings stored before the summaries were maintained. Only the trainings of the month are read, so the history
+     * is rebuilt one month at a time.
+     *
+     * @param month month of the summaries
+     * @return number of summaries of the month
+     */
+    int rebuildMonthlySummaries(YearMonth month);
+
 }
\ No newline at end of file
@@ -0,0 +1,32 @@
+/*
+ ____            _            _____ _             _     _      ___ ___ ___ ___ ___
+|    \ ___ _____|_|___ ___   |   __| |_ ___ ___  |_|___| |_   | . | . | . |_  |  _|
+|  |  | .'|     | | .'|   |  |__   |  _|  _| . | | | -_| '_|  |_  |_  | . |_  | . |
+|____/|__,|_|_|_|_|__,|_|_|  |_____|_| |_| |___|_| |___|_,_|  |___|___|___|___|___|
+                                               |___|
+ */
+package pl.wsb.fitnesstracker.training.api;
+
+import pl.wsb.fitnesstracker.training.internal.ActivityType;
+
+import java.time.LocalDateTime;
+
+/**
+ * Event published within the updating transaction after a training has been changed. It carries the values before
+ * and after the change, so that listeners can revert the previous values and apply the new ones.
+ *
+ * @param trainingId           ID of the updated training
+ * @param previousUserId       ID of the user of the training before the update
+ * @param previousDistance     distance of the training before the update
+ * @param userId               ID of the user of the training after the update
+ * @param distance             distance of the training after the update
+ * @param previousStartTime    start time of the training before the update
+ * @param previousActivityType activity of the training before the update
+ * @param startTime            start time of the training after the update
+ * @param activityType         activity of the training after the update
+ */
+public record TrainingUpdatedEvent(Long trainingId, Long previousUserId, double previousDistance, Long userId,
+                                   double distance, LocalDateTime previousStartTime, ActivityType previousActivityType,
+                                   LocalDateTime startTime, ActivityType activityType) {
+
+}
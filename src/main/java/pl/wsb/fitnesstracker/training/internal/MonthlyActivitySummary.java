@@ -0,0 +1,78 @@
+/*
+ ____            _            _____ _             _     _      ___ ___ ___ ___ ___
+|    \ ___ _____|_|___ ___   |   __| |_ ___ ___  |_|___| |_   | . | . | . |_  |  _|
+|  |  | .'|     | | .'|   |  |__   |  _|  _| . | | | -_| '_|  |_  |_  | . |_  | . |
+|____/|__,|_|_|_|_|__,|_|_|  |_____|_| |_| |___|_| |___|_,_|  |___|___|___|___|___|
+                                               |___|
+ */
+package pl.wsb.fitnesstracker.training.internal;
+
+import pl.wsb.fitnesstracker.training.api.MonthlyTrainingSummary;
+import pl.wsb.fitnesstracker.user.api.User;
+
+import jakarta.persistence.*;
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+import java.time.LocalDate;
+
+/**
+ * Precomputed summary of the trainings of one user and activity in one month, maintained by
+ * {@link MonthlyTrainingSummaryListener} as trainings are stored. The unique index on
+ * {@code (user_id, month_start, activity_type)} serves the updates of a single summary, the index on
+ * {@code (month_start, user_id, activity_type)} serves reading all summaries of a month ordered by user.
+ */
+@Entity
+@Table(name = "monthly_activity_summaries",
+       uniqueConstraints = @UniqueConstraint(name = "uk_monthly_activity_summaries_user_id_month_start_activity_type",
+                                             columnNames = {"user_id", "month_start", "activity_type"}),
+       indexes = @Index(name = "idx_monthly_activity_summaries_month_start_user_id",
+                        columnList = "month_start, user_id, activity_type"))
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+@ToString
+class MonthlyActivitySummary {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "user_id", nullable = false)
+    @ToString.Exclude
+    private User user;
+
+    /**
+     * First day of the month.
+     */
+    @Column(name = "month_start", nullable = false)
+    private LocalDate monthStart;
+
+    @Enumerated(EnumType.ORDINAL)
+    @Column(name = "activity_type", nullable = false)
+    private ActivityType activityType;
+
+    @Column(name = "trainings", nullable = false)
+    private int trainings;
+
+    @Column(name = "total_distance", nullable = false)
+    private double totalDistance;
+
+    @Column(name = "total_duration_seconds", nullable = false)
+    private long totalDurationSeconds;
+
+    @Column(name = "longest_distance", nullable = false)
+    private double longestDistance;
+
+    @Column(name = "highest_average_speed", nullable = false)
+    private double highestAverageSpeed;
+
+    User getUser() {
+        return user;
+    }
+
+    MonthlyTrainingSummary.ActivitySummary toActivitySummary() {
+        return new MonthlyTrainingSummary.ActivitySummary(activityType, trainings, totalDistance, totalDurationSeconds,
+                longestDistance, highestAverageSpeed);
+    }
+}
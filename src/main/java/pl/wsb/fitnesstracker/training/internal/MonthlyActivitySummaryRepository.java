@@ -0,0 +1,167 @@
+/*
+ ____            _            _____ _             _     _      ___ ___ ___ ___ ___
+|    \ ___ _____|_|___ ___   |   __| |_ ___ ___  |_|___| |_   | . | . | . |_  |  _|
+|  |  | .'|     | | .'|   |  |__   |  _|  _| . | | | -_| '_|  |_  |_  | . |_  | . |
+|____/|__,|_|_|_|_|__,|_|_|  |_____|_| |_| |___|_| |___|_,_|  |___|___|___|___|___|
+                                               |___|
+ */
+package pl.wsb.fitnesstracker.training.internal;
+
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.stream.Stream;
+
+/**
+ * Repository for the {@link MonthlyActivitySummary}s.
+ */
+interface MonthlyActivitySummaryRepository extends JpaRepository<MonthlyActivitySummary, Long> {
+
+    /**
+     * Adds a training to the summary of its user, month and activity, creating the summary if it does not exist yet.
+     *
+     * @param userId          ID of the user of the training
+     * @param monthStart      first day of the month of the training's start time
+     * @param activityType    ordinal of the activity of the training
+     * @param distance        distance of the training
+     * @param durationSeconds duration of the training in seconds
+     * @param averageSpeed    average speed of the training
+     * @return number of changed summaries
+     */
+    @Modifying(flushAutomatically = true)
+    @Query(nativeQuery = true, value = """
+            merge into monthly_activity_summaries s
+            using (select cast(:userId as bigint) as user_id, cast(:monthStart as date) as month_start,
+                          cast(:activityType as int) as activity_type) d
+            on s.user_id = d.user_id and s.month_start = d.month_start and s.activity_type = d.activity_type
+            when matched then update set trainings = s.trainings + 1,
+                                         total_distance = s.total_distance + :distance,
+                                         total_duration_seconds = s.total_duration_seconds + :durationSeconds,
+                                         longest_distance = greatest(s.longest_distance, :distance),
+                                         highest_average_speed = greatest(s.highest_average_speed, :averageSpeed)
+            when not matched then insert (user_id, month_start, activity_type, trainings, total_distance,
+                                          total_duration_seconds, longest_distance, highest_average_speed)
+                                  values (d.user_id, d.month_start, d.activity_type, 1, :distance, :durationSeconds,
+                                          :distance, :averageSpeed)""")
+    int addTraining(Long userId, LocalDate monthStart, int activityType, double distance, long durationSeconds,
+                    double averageSpeed);
+
+    /**
+     * Computes the summary of a user, month and activity from the trainings, which are found with the
+     * {@code (user_id, activity_type, start_time)} index of the trainings, and writes it with a single statement:
+     * the summary is created, overwritten, or deleted if the user has no trainings of the activity in the month.
+     * The summary stays in place while it is written, so a concurrent {@link #addTraining} waits for its row lock
+     * instead of inserting a summary of its own.
+     *
+     * @param userId       ID of the user
+     * @param monthStart   first day of the month
+     * @param from         start of the month
+     * @param to           start of the following month
+     * @param activityType ordinal of the activity
+     * @return number of changed summaries
+     */
+    @Modifying(flushAutomatically = true)
+    @Query(nativeQuery = true, value = """
+            merge into monthly_activity_summaries s
+            using (select cast(:userId as bigint) as user_id, cast(:monthStart as date) as month_start,
+                          cast(:activityType as int) as activity_type, count(*) as trainings,
+                          coalesce(sum(distance), 0) as total_distance,
+                          coalesce(sum(datediff(second, start_time, end_time)), 0) as total_duration_seconds,
+                          coalesce(max(distance), 0) as longest_distance,
+                          coalesce(max(average_speed), 0) as highest_average_speed
+                   from trainings
+                   where user_id = :userId and activity_type = :activityType
+                     and start_time >= :from and start_time < :to) d
+            on s.user_id = d.user_id and s.month_start = d.month_start and s.activity_type = d.activity_type
+            when matched and d.trainings = 0 then delete
+            when matched then update set trainings = d.trainings,
+                                         total_distance = d.total_distance,
+                                         total_duration_seconds = d.total_duration_seconds,
+                                         longest_distance = d.longest_distance,
+                                         highest_average_speed = d.highest_average_speed
+            when not matched and d.trainings > 0 then insert (user_id, month_start, activity_type, trainings,
+                                                             total_distance, total_duration_seconds, longest_distance,
+                                                             highest_average_speed)
+                                  values (d.user_id, d.month_start, d.activity_type, d.trainings, d.total_distance,
+                                          d.total_duration_seconds, d.longest_distance, d.highest_average_speed)""")
+    int recomputeSummary(Long userId, LocalDate monthStart, LocalDateTime from, LocalDateTime to, int activityType);
+
+    /**
+     * Computes the summaries of all users and activities of a month from the trainings of the month, which are found
+     * with the {@code start_time} index of the trainings, and writes them with a single statement, creating or
+     * overwriting them.
+     *
+     * @param monthStart first day of the month
+     * @param from       start of the month
+     * @param to         start of the following month
+     * @return number of written summaries
+     */
+    @Modifying(flushAutomatically = true)
+    @Query(nativeQuery = true, value = """
+            merge into monthly_activity_summaries s
+            using (select user_id, cast(:monthStart as date) as month_start, activity_type, count(*) as trainings,
+                          sum(distance) as total_distance,
+                          sum(datediff(second, start_time, end_time)) as total_duration_seconds,
+                          max(distance) as longest_distance, max(average_speed) as highest_average_speed
+                   from trainings
+                   where start_time >= :from and start_time < :to
+                   group by user_id, activity_type) d
+            on s.user_id = d.user_id and s.month_start = d.month_start and s.activity_type = d.activity_type
+            when matched then update set trainings = d.trainings,
+                                         total_distance = d.total_distance,
+                                         total_duration_seconds = d.total_duration_seconds,
+                                         longest_distance = d.longest_distance,
+                                         highest_average_speed = d.highest_average_speed
+            when not matched then insert (user_id, month_start, activity_type, trainings, total_distance,
+                                          total_duration_seconds, longest_distance, highest_average_speed)
+                                  values (d.user_id, d.month_start, d.activity_type, d.trainings, d.total_distance,
+                                          d.total_duration_seconds, d.longest_distance, d.highest_average_speed)""")
+    int recomputeMonth(LocalDate monthStart, LocalDateTime from, LocalDateTime to);
+
+    /**
+     * Deletes the summaries of a month, whose user has no trainings of the activity in the month anymore.
+     *
+     * @param monthStart first day of the month
+     * @param from       start of the month
+     * @param to         start of the following month
+     * @return number of deleted summaries
+     */
+    @Modifying(flushAutomatically = true)
+    @Query(nativeQuery = true, value = """
+            delete from monthly_activity_summaries s
+            where s.month_start = :monthStart
+              and not exists (select 1 from trainings t
+                              where t.user_id = s.user_id and t.activity_type = s.activity_type
+                                and t.start_time >= :from and t.start_time < :to)""")
+    int deleteEmptyOfMonth(LocalDate monthStart, LocalDateTime from, LocalDateTime to);
+
+    /**
+     * Streams the summaries of a month together with their users, ordered by user ID and activity. Only the users
+     * of one partition, with {@code mod(user_id, partitions) = partition}, are read, the partition filter is applied
+     * to the user IDs of the index on {@code (month_start, user_id)}.
+     *
+     * @param monthStart first day of the month
+     * @param partition  partition of the users
+     * @param partitions number of partitions
+     * @return stream of the summaries, to be closed by the caller
+     */
+    @QueryHints({@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+                 @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")})
+    @Query("""
+            select s from MonthlyActivitySummary s join fetch s.user
+            where s.monthStart = :monthStart and mod(s.user.id, :partitions) = :partition
+            order by s.user.id, s.activityType""")
+    Stream<MonthlyActivitySummary> streamByMonth(LocalDate monthStart, int partition, int partitions);
+
+    @Modifying
+    @Query("delete from MonthlyActivitySummary s where s.user.id in :userIds")
+    int deleteByUserIdIn(Collection<Long> userIds);
+
+}
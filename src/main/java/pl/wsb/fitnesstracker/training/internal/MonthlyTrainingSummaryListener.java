@@ -0,0 +1,67 @@
+/*
+ ____            _            _____ _             _     _      ___ ___ ___ ___ ___
+|    \ ___ _____|_|___ ___   |   __| |_ ___ ___  |_|___| |_   | . | . | . |_  |  _|
+|  |  | .'|     | | .'|   |  |__   |  _|  _| . | | | -_| '_|  |_  |_  | . |_  | . |
+|____/|__,|_|_|_|_|__,|_|_|  |_____|_| |_| |___|_| |___|_,_|  |___|___|___|___|___|
+                                               |___|
+ */
+package pl.wsb.fitnesstracker.training.internal;
+
+import pl.wsb.fitnesstracker.training.api.TrainingCreatedEvent;
+import pl.wsb.fitnesstracker.training.api.TrainingUpdatedEvent;
+import pl.wsb.fitnesstracker.user.api.UserDeletionEvent;
+
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * Keeps the {@link MonthlyActivitySummary}s up to date, within the transactions storing the trainings. A created
+ * training is added to its summary with a single statement. An updated training may leave its summary, whose longest
+ * distance and highest speed cannot be reverted, so the summaries it left and joined are computed again from
+ * the trainings of the user, month and activity. Trainings stored without events, e.g. before the summaries were
+ * maintained, are counted by {@link pl.wsb.fitnesstracker.training.api.TrainingService#rebuildMonthlySummaries}.
+ */
+@Component
+class MonthlyTrainingSummaryListener {
+
+    private final MonthlyActivitySummaryRepository summaryRepository;
+
+    MonthlyTrainingSummaryListener(MonthlyActivitySummaryRepository summaryRepository) {
+        this.summaryRepository = summaryRepository;
+    }
+
+    @EventListener
+    void onTrainingCreated(TrainingCreatedEvent event) {
+        summaryRepository.addTraining(event.userId(), monthStart(event.startTime()), event.activityType().ordinal(),
+                event.distance(), Duration.between(event.startTime(), event.endTime()).getSeconds(), event.averageSpeed());
+    }
+
+    @EventListener
+    void onTrainingUpdated(TrainingUpdatedEvent event) {
+        recompute(event.previousUserId(), monthStart(event.previousStartTime()), event.previousActivityType());
+        LocalDate monthStart = monthStart(event.startTime());
+        if (!event.userId().equals(event.previousUserId()) || !monthStart.equals(monthStart(event.previousStartTime()))
+                || event.activityType() != event.previousActivityType()) {
+            recompute(event.userId(), monthStart, event.activityType());
+        }
+    }
+
+    @EventListener
+    void onUserDeletion(UserDeletionEvent event) {
+        summaryRepository.deleteByUserIdIn(event.userIds());
+    }
+
+    private void recompute(Long userId, LocalDate monthStart, ActivityType activityType) {
+        summaryRepository.recomputeSummary(userId, monthStart, monthStart.atStartOfDay(),
+                monthStart.plusMonths(1).atStartOfDay(), activityType.ordinal());
+    }
+
+    private static LocalDate monthStart(LocalDateTime dateTime) {
+        return dateTime.toLocalDate().withDayOfMonth(1);
+    }
+
+}
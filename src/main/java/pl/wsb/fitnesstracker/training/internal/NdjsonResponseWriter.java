@@ -0,0 +1,47 @@
+/*
+ ____            _            _____ _             _     _      ___ ___ ___ ___ ___
+|    \ ___ _____|_|___ ___   |   __| |_ ___ ___  |_|___| |_   | . | . | . |_  |  _|
+|  |  | .'|     | | .'|   |  |__   |  _|  _| . | | | -_| '_|  |_  |_  | . |_  | . |
+|____/|__,|_|_|_|_|__,|_|_|  |_____|_| |_| |___|_| |___|_,_|  |___|___|___|___|___|
+                                               |___|
+ */
+package pl.wsb.fitnesstracker.training.internal;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+
+/**
+ * Writes newline delimited JSON straight to the HTTP response, one value per line, so that large exports are
+ * serialized without building the whole result in memory first.
+ */
+@Component
+class NdjsonResponseWriter {
+
+    private final ObjectWriter objectWriter;
+
+    NdjsonResponseWriter(ObjectMapper objectMapper) {
+        this.objectWriter = objectMapper.writer()
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE)
+                .withRootValueSeparator("\n");
+    }
+
+    /**
+     * Starts the NDJSON response body, which is completed by closing the returned writer.
+     *
+     * @param response HTTP response to write to
+     * @return writer accepting the values, one per line
+     * @throws IOException if the response body cannot be written
+     */
+    SequenceWriter open(HttpServletResponse response) throws IOException {
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        return objectWriter.writeValues(response.getOutputStream());
+    }
+
+}
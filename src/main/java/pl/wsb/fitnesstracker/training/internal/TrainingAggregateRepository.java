@@ -0,0 +1,70 @@
+/*
+ ____            _            _____ _             _     _      ___ ___ ___ ___ ___
+|    \ ___ _____|_|___ ___   |   __| |_ ___ ___  |_|___| |_   | . | . | . |_  |  _|
+|  |  | .'|     | | .'|   |  |__   |  _|  _| . | | | -_| '_|  |_  |_  | . |_  | . |
+|____/|__,|_|_|_|_|__,|_|_|  |_____|_| |_| |___|_| |___|_,_|  |___|___|___|___|___|
+                                               |___|
+ */
+package pl.wsb.fitnesstracker.training.internal;
+
+import pl.wsb.fitnesstracker.training.api.TrainingAggregate;
+import pl.wsb.fitnesstracker.training.api.TrainingBucket;
+
+import jakarta.annotation.Nullable;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Aggregates trainings into time buckets with a single GROUP BY query. The average speed of a bucket is its total
+ * distance per total duration, so long trainings weigh more than short ones. It is written in SQL, as the datetime field
+ * of {@code DATE_TRUNC} cannot be passed as a query parameter; it comes from {@link TrainingBucket} only.
+ * The rows are selected by the {@code (user_id, start_time, id)} index. Being plain JDBC, the query sees flushed
+ * trainings only.
+ */
+@Repository
+class TrainingAggregateRepository {
+
+    private static final String QUERY = """
+            select cast(date_trunc(%s, start_time) as date) as bucket_start,
+                   count(*) as training_count,
+                   sum(distance) as total_distance,
+                   sum(datediff(second, start_time, end_time)) as total_duration,
+                   coalesce(sum(distance) * 3600 / nullif(sum(datediff(second, start_time, end_time)), 0), 0) as average_speed
+            from trainings
+            where user_id = :userId and start_time >= :from and start_time < :to %s
+            group by bucket_start
+            order by bucket_start""";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    TrainingAggregateRepository(NamedParameterJdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    List<TrainingAggregate> aggregate(Long userId, TrainingBucket bucket, @Nullable ActivityType activityType,
+                                      LocalDateTime from, LocalDateTime to) {
+        MapSqlParameterSource parameters = new MapSqlParameterSource()
+                .addValue("userId", userId)
+                .addValue("from", from)
+                .addValue("to", to);
+        String activityFilter = "";
+        if (activityType != null) {
+            activityFilter = "and activity_type = :activityType";
+            parameters.addValue("activityType", activityType.ordinal());
+        }
+
+        return jdbcTemplate.query(QUERY.formatted(bucket.getDatetimeField(), activityFilter), parameters,
+                (rs, rowNum) -> new TrainingAggregate(
+                        rs.getObject("bucket_start", LocalDate.class),
+                        rs.getLong("training_count"),
+                        rs.getDouble("total_distance"),
+                        rs.getLong("total_duration"),
+                        rs.getDouble("average_speed")));
+    }
+
+}
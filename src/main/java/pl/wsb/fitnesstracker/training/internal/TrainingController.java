@@ -7,13 +7,24 @@
  */
 package pl.wsb.fitnesstracker.training.internal;
 
+import pl.wsb.fitnesstracker.pagination.api.KeysetPage;
+import pl.wsb.fitnesstracker.pagination.api.KeysetPages;
 import pl.wsb.fitnesstracker.training.api.*;
 import pl.wsb.fitnesstracker.user.api.UserNotFoundException;
 
+import com.fasterxml.jackson.databind.SequenceWriter;
+import jakarta.annotation.Nullable;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
 import java.util.List;
 
 import static org.springframework.http.HttpStatus.*;
@@ -25,11 +36,14 @@ class TrainingController {
     private final TrainingProvider trainingProvider;
     private final TrainingService trainingService;
     private final TrainingMapper trainingMapper;
+    private final NdjsonResponseWriter ndjsonResponseWriter;
 
-    TrainingController(TrainingProvider trainingProvider, TrainingService trainingService, TrainingMapper trainingMapper) {
+    TrainingController(TrainingProvider trainingProvider, TrainingService trainingService, TrainingMapper trainingMapper,
+                       NdjsonResponseWriter ndjsonResponseWriter) {
         this.trainingProvider = trainingProvider;
         this.trainingService = trainingService;
         this.trainingMapper = trainingMapper;
+        this.ndjsonResponseWriter = ndjsonResponseWriter;
     }
 
     @GetMapping
@@ -39,13 +53,80 @@ class TrainingController {
                 .toList();
     }
 
+    /**
+     * Export all trainings as newline delimited JSON of TrainingDto, ordered by ID. Trainings are streamed from
+     * a database cursor to the response, so memory use does not depend on the number of trainings.
+     */
+    @GetMapping(path = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    void exportTrainings(HttpServletResponse response) throws IOException {
+        try (SequenceWriter writer = ndjsonResponseWriter.open(response)) {
+            trainingProvider.forEachTraining(training -> {
+                try {
+                    writer.write(trainingMapper.toTrainingDto(training));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+
     @GetMapping("/{userId}")
-    List<TrainingDto> getTrainingsByUser(@PathVariable Long userId) {
-        return trainingProvider.getTrainingsByUserId(userId).stream()
+    List<TrainingDto> getTrainingsByUser(@PathVariable Long userId,
+                                         @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) @Nullable LocalDateTime from,
+                                         @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) @Nullable LocalDateTime to) {
+        List<Training> trainings = from == null && to == null
+                ? trainingProvider.getTrainingsByUserId(userId)
+                : trainingProvider.getTrainingsByUserId(userId, from, to);
+        return trainings.stream()
                 .map(trainingMapper::toTrainingDto)
                 .toList();
     }
 
+    /**
+     * Get one page of trainings of a user started within {@code [from, to)}, ordered by start time. The cursor of
+     * the next page is returned in the {@value KeysetPage#NEXT_CURSOR_HEADER} header.
+     */
+    @GetMapping(path = "/{userId}", params = "limit")
+    ResponseEntity<List<TrainingDto>> getTrainingsByUser(@PathVariable Long userId,
+                                                         @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) @Nullable LocalDateTime from,
+                                                         @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) @Nullable LocalDateTime to,
+                                                         @RequestParam int limit,
+                                                         @RequestParam(required = false) @Nullable String cursor) {
+        return KeysetPages.toResponse(trainingProvider.getTrainingsByUserId(userId, from, to, cursor, limit)
+                .map(trainingMapper::toTrainingDto));
+    }
+
+    /**
+     * Search trainings by any combination of user, activity type, start time window {@code [from, to)} and distance
+     * range, ordered by start time. The cursor of the next page is returned in the
+     * {@value KeysetPage#NEXT_CURSOR_HEADER} header.
+     */
+    @GetMapping("/search")
+    ResponseEntity<List<TrainingDto>> searchTrainings(@RequestParam(required = false) @Nullable Long userId,
+                                                      @RequestParam(required = false) @Nullable ActivityType activityType,
+                                                      @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) @Nullable LocalDateTime from,
+                                                      @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) @Nullable LocalDateTime to,
+                                                      @RequestParam(required = false) @Nullable Double minDistance,
+                                                      @RequestParam(required = false) @Nullable Double maxDistance,
+                                                      @RequestParam int limit,
+                                                      @RequestParam(required = false) @Nullable String cursor) {
+        TrainingSearchCriteria criteria = new TrainingSearchCriteria(userId, activityType, from, to, minDistance, maxDistance);
+        return KeysetPages.toResponse(trainingProvider.searchTrainings(criteria, cursor, limit)
+                .map(trainingMapper::toTrainingDto));
+    }
+
+    /**
+     * Get aggregates of the trainings of a user started within {@code [from, to)}, per day, week or month.
+     */
+    @GetMapping("/{userId}/aggregates")
+    List<TrainingAggregate> getTrainingAggregates(@PathVariable Long userId,
+                                                  @RequestParam TrainingBucket bucket,
+                                                  @RequestParam(required = false) @Nullable ActivityType activityType,
+                                                  @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) @Nullable LocalDateTime from,
+                                                  @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) @Nullable LocalDateTime to) {
+        return trainingProvider.getTrainingAggregates(userId, bucket, activityType, from, to);
+    }
+
     @GetMapping("/completed/{date}")
     List<TrainingDto> getCompletedTrainingsAfter(@PathVariable LocalDate date) {
         return trainingProvider.getCompletedTrainingsAfter(date).stream()
@@ -66,6 +147,27 @@ class TrainingController {
         return trainingMapper.toTrainingDto(trainingService.createTraining(training));
     }
 
+    /**
+     * Create many trainings at once, e.g. uploaded by a device after being offline. Invalid trainings are rejected
+     * individually, the result of every training is returned in the order of the request.
+     */
+    @PostMapping("/batch")
+    List<TrainingBatchItemResult> createTrainings(@RequestBody List<TrainingUpdateDto> trainings) {
+        return trainingService.createTrainings(trainings);
+    }
+
+    /**
+     * Computes the monthly training summaries of a month again from the trainings, e.g. to count the trainings stored
+     * before the summaries were maintained.
+     *
+     * @param month month of the summaries, e.g. {@code 2024-02}
+     * @return number of summaries of the month
+     */
+    @PostMapping("/summaries/{month}/rebuild")
+    int rebuildMonthlySummaries(@PathVariable YearMonth month) {
+        return trainingService.rebuildMonthlySummaries(month);
+    }
+
     @PutMapping("/{id}")
     @ResponseStatus(OK)
     TrainingDto updateTraining(@PathVariable Long id, @RequestBody TrainingUpdateDto training) {
@@ -9,17 +9,106 @@ package pl.wsb.fitnesstracker.training.internal;
 
 import pl.wsb.fitnesstracker.training.api.Training;
 
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Stream;
 
-interface TrainingRepository extends JpaRepository<Training, Long> {
+/**
+ * Repository for {@link Training}. The user of a training is lazy, so every finder fetches it together with the
+ * trainings in a single statement, as it is needed by {@link TrainingMapper}. Searches by any combination of criteria
+ * are built from {@link TrainingSpecifications}.
+ */
+interface TrainingRepository extends JpaRepository<Training, Long>, JpaSpecificationExecutor<Training> {
+
+    @Override
+    @EntityGraph(attributePaths = "user")
+    List<Training> findAll();
+
+    @Override
+    @EntityGraph(attributePaths = "user")
+    Optional<Training> findById(Long id);
 
+    @EntityGraph(attributePaths = "user")
     List<Training> findByUserId(Long id);
 
+    /**
+     * Returns trainings of the user started within {@code [from, to)} and after the given keyset position, ordered by
+     * start time and ID. Both the filter and the order are served by the {@code (user_id, start_time, id)} index,
+     * so the cost depends on the size of the page, not on the length of the user's history.
+     *
+     * @param userId         ID of the user
+     * @param from           inclusive lower bound of the start time
+     * @param to             exclusive upper bound of the start time
+     * @param afterStartTime start time of the last training of the previous page, {@code from} for the first page
+     * @param afterId        ID of the last training of the previous page, {@link Long#MIN_VALUE} for the first page
+     * @param limit          maximum number of trainings to return
+     * @return trainings ordered by start time and ID
+     */
+    @EntityGraph(attributePaths = "user")
+    @Query("""
+            select t from Training t
+            where t.user.id = :userId and t.startTime >= :from and t.startTime < :to
+            and t.startTime >= :afterStartTime and (t.startTime > :afterStartTime or t.id > :afterId)
+            order by t.startTime, t.id""")
+    List<Training> findByUserIdStartedBetween(Long userId, LocalDateTime from, LocalDateTime to,
+                                              LocalDateTime afterStartTime, Long afterId, Limit limit);
+
+    /**
+     * Streams all trainings with their users ordered by ID from a forward-only database cursor, fetching 500 rows
+     * at a time. It has to be consumed within a transaction.
+     *
+     * @return Stream of all trainings
+     */
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("select t from Training t join fetch t.user order by t.id")
+    Stream<Training> streamAll();
+
+    @EntityGraph(attributePaths = "user")
+    Optional<Training> findBySessionId(UUID sessionId);
+
+    List<Training> findBySessionIdIn(Collection<UUID> sessionIds);
+
+    /**
+     * Inserts a training unless a training with the same session ID exists, as a single statement. The unique index
+     * on {@code session_id} serves the lookup. The ID is taken from the same sequence Hibernate uses, which is safe
+     * as Hibernate allocates IDs starting at the value it got from the sequence (pooled-lo).
+     *
+     * @return 1 if the training was inserted, 0 if it already existed
+     */
+    @Modifying(flushAutomatically = true)
+    @Query(nativeQuery = true, value = """
+            merge into trainings t
+            using (select cast(:sessionId as uuid) as session_id) s
+            on t.session_id = s.session_id
+            when not matched then insert (id, session_id, user_id, start_time, end_time, activity_type, distance, average_speed)
+            values (next value for trainings_seq, s.session_id, :userId, :startTime, :endTime, :activityType, :distance, :averageSpeed)""")
+    int insertIfAbsent(UUID sessionId, Long userId, LocalDateTime startTime, LocalDateTime endTime, int activityType,
+                       double distance, double averageSpeed);
+
+    @EntityGraph(attributePaths = "user")
     List<Training> findByEndTimeAfter(LocalDateTime endTime);
 
+    @EntityGraph(attributePaths = "user")
     List<Training> findByActivityType(ActivityType activityType);
 
+    @Modifying(flushAutomatically = true)
+    @Query("delete from Training t where t.user.id in :userIds")
+    int deleteByUserIdIn(Collection<Long> userIds);
+
 }
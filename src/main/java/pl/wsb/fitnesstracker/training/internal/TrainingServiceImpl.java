@@ -7,27 +7,89 @@
  */
 package pl.wsb.fitnesstracker.training.internal;
 
+import pl.wsb.fitnesstracker.exception.api.BusinessException;
+import pl.wsb.fitnesstracker.exception.api.ConflictException;
+import pl.wsb.fitnesstracker.pagination.api.KeysetCursor;
+import pl.wsb.fitnesstracker.pagination.api.KeysetPage;
 import pl.wsb.fitnesstracker.training.api.*;
 import pl.wsb.fitnesstracker.user.api.User;
+import pl.wsb.fitnesstracker.user.api.UserDeletionEvent;
 import pl.wsb.fitnesstracker.user.api.UserNotFoundException;
-import pl.wsb.fitnesstracker.user.internal.UserRepository;
+import pl.wsb.fitnesstracker.user.api.UserProvider;
 
+import jakarta.annotation.Nullable;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import jakarta.persistence.EntityManager;
 
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
 import java.util.List;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.UUID;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 @Slf4j
 class TrainingServiceImpl implements TrainingProvider, TrainingService {
+
+    /**
+     * Number of trainings fetched from the database cursor at once, and kept in the persistence context, by exports.
+     */
+    static final int EXPORT_BATCH_SIZE = 500;
+
+    /**
+     * Bounds used in place of an open end of a time window, within the range of the database timestamps.
+     */
+    private static final LocalDateTime MIN_START_TIME = LocalDateTime.of(1, 1, 1, 0, 0);
+    private static final LocalDateTime MAX_START_TIME = LocalDateTime.of(9999, 12, 31, 23, 59, 59);
+
+    /**
+     * Inserts a training unless a training with the same session ID exists, the JDBC form of
+     * {@link TrainingRepository#insertIfAbsent}, which is sent in batches.
+     */
+    private static final String INSERT_IF_ABSENT = """
+            merge into trainings t
+            using (select cast(? as uuid) as session_id) s
+            on t.session_id = s.session_id
+            when not matched then insert (id, session_id, user_id, start_time, end_time, activity_type, distance, average_speed)
+            values (next value for trainings_seq, s.session_id, ?, ?, ?, ?, ?, ?)""";
+
     private final TrainingRepository trainingRepository;
-    private final UserRepository userRepository;
+    private final TrainingAggregateRepository trainingAggregateRepository;
+    private final UserProvider userProvider;
+    private final EntityManager entityManager;
+    private final ApplicationEventPublisher eventPublisher;
+    private final MonthlyActivitySummaryRepository summaryRepository;
+    private final JdbcTemplate jdbcTemplate;
 
-    public TrainingServiceImpl(TrainingRepository trainingRepository, UserRepository userRepository) {
+    public TrainingServiceImpl(TrainingRepository trainingRepository, TrainingAggregateRepository trainingAggregateRepository,
+                               UserProvider userProvider, EntityManager entityManager,
+                               ApplicationEventPublisher eventPublisher, MonthlyActivitySummaryRepository summaryRepository,
+                               JdbcTemplate jdbcTemplate) {
         this.trainingRepository = trainingRepository;
-        this.userRepository = userRepository;
+        this.trainingAggregateRepository = trainingAggregateRepository;
+        this.summaryRepository = summaryRepository;
+        this.userProvider = userProvider;
+        this.entityManager = entityManager;
+        this.eventPublisher = eventPublisher;
+        this.jdbcTemplate = jdbcTemplate;
     }
 
     @Override
@@ -40,6 +102,76 @@ class TrainingServiceImpl implements TrainingProvider, TrainingService {
         return trainingRepository.findByUserId(userId);
     }
 
+    @Override
+    public List<Training> getTrainingsByUserId(Long userId, @Nullable LocalDateTime from, @Nullable LocalDateTime to) {
+        LocalDateTime start = from == null ? MIN_START_TIME : from;
+        return trainingRepository.findByUserIdStartedBetween(userId, start, checkWindow(start, to), start, Long.MIN_VALUE,
+                Limit.unlimited());
+    }
+
+    @Override
+    public KeysetPage<Training> getTrainingsByUserId(Long userId, @Nullable LocalDateTime from, @Nullable LocalDateTime to,
+                                                     @Nullable String cursor, int limit) {
+        KeysetPage.checkLimit(limit);
+
+        LocalDateTime start = from == null ? MIN_START_TIME : from;
+        LocalDateTime end = checkWindow(start, to);
+        LocalDateTime afterStartTime = start;
+        long afterId = Long.MIN_VALUE;
+        if (cursor != null) {
+            KeysetCursor keysetCursor = KeysetCursor.decode(cursor, 2);
+            afterStartTime = keysetCursor.getLocalDateTime(0);
+            afterId = keysetCursor.getLong(1);
+        }
+
+        List<Training> trainings = trainingRepository.findByUserIdStartedBetween(userId, start, end, afterStartTime,
+                afterId, Limit.of(limit + 1));
+        return KeysetPage.of(trainings, limit, last -> KeysetCursor.encode(last.getStartTime(), last.getId()));
+    }
+
+    @Override
+    public KeysetPage<Training> searchTrainings(TrainingSearchCriteria criteria, @Nullable String cursor, int limit) {
+        KeysetPage.checkLimit(limit);
+        if (criteria.from() != null && criteria.to() != null) {
+            checkWindow(criteria.from(), criteria.to());
+        }
+        if (criteria.minDistance() != null && criteria.maxDistance() != null
+                && criteria.minDistance() > criteria.maxDistance()) {
+            throw new BusinessException("Minimum distance %s must not be greater than maximum distance %s"
+                    .formatted(criteria.minDistance(), criteria.maxDistance()));
+        }
+
+        Specification<Training> specification = TrainingSpecifications.matching(criteria)
+                .and(TrainingSpecifications.orderedByStartTime(criteria));
+        if (cursor != null) {
+            KeysetCursor keysetCursor = KeysetCursor.decode(cursor, 2);
+            specification = specification.and(TrainingSpecifications.startedAfter(keysetCursor.getLocalDateTime(0),
+                    keysetCursor.getLong(1)));
+        }
+
+        List<Training> trainings = trainingRepository.findBy(specification, query -> query
+                .limit(limit + 1)
+                .project("user")
+                .all());
+        return KeysetPage.of(trainings, limit, last -> KeysetCursor.encode(last.getStartTime(), last.getId()));
+    }
+
+    @Override
+    public List<TrainingAggregate> getTrainingAggregates(Long userId, TrainingBucket bucket,
+                                                         @Nullable ActivityType activityType,
+                                                         @Nullable LocalDateTime from, @Nullable LocalDateTime to) {
+        LocalDateTime start = from == null ? MIN_START_TIME : from;
+        return trainingAggregateRepository.aggregate(userId, bucket, activityType, start, checkWindow(start, to));
+    }
+
+    private static LocalDateTime checkWindow(LocalDateTime from, @Nullable LocalDateTime to) {
+        LocalDateTime end = to == null ? MAX_START_TIME : to;
+        if (!from.isBefore(end)) {
+            throw new BusinessException("Start of the time window %s must be before its end %s".formatted(from, end));
+        }
+        return end;
+    }
+
     @Override
     public List<Training> getCompletedTrainingsAfter(LocalDate date) {
         return trainingRepository.findByEndTimeAfter(date.atStartOfDay());
@@ -51,10 +183,220 @@ class TrainingServiceImpl implements TrainingProvider, TrainingService {
     }
 
     @Override
+    @Transactional(readOnly = true)
+    public void forEachTraining(Consumer<Training> action) {
+        int count = 0;
+        try (Stream<Training> trainings = trainingRepository.streamAll()) {
+            for (Training training : (Iterable<Training>) trainings::iterator) {
+                action.accept(training);
+                if (++count % EXPORT_BATCH_SIZE == 0) {
+                    entityManager.clear();
+                }
+            }
+        }
+        log.info("Exported {} trainings", count);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void forEachUserMonthlySummary(YearMonth month, BiConsumer<User, MonthlyTrainingSummary> action) {
+        forEachUserMonthlySummary(month, 0, 1, action);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void forEachUserMonthlySummary(YearMonth month, int partition, int partitions,
+                                          BiConsumer<User, MonthlyTrainingSummary> action) {
+        if (partitions < 1 || partition < 0 || partition >= partitions) {
+            throw new IllegalArgumentException("Partition %d of %d is out of range".formatted(partition, partitions));
+        }
+        int users = 0;
+        User user = null;
+        List<MonthlyTrainingSummary.ActivitySummary> activities = new ArrayList<>();
+        try (Stream<MonthlyActivitySummary> summaries = summaryRepository.streamByMonth(month.atDay(1), partition, partitions)) {
+            for (MonthlyActivitySummary summary : (Iterable<MonthlyActivitySummary>) summaries::iterator) {
+                if (user != null && !user.getId().equals(summary.getUser().getId())) {
+                    action.accept(user, new MonthlyTrainingSummary(month, activities));
+                    users++;
+                    activities = new ArrayList<>();
+                    entityManager.clear();
+                }
+                user = summary.getUser();
+                activities.add(summary.toActivitySummary());
+            }
+        }
+        if (user != null) {
+            action.accept(user, new MonthlyTrainingSummary(month, activities));
+            users++;
+        }
+        log.info("Passed monthly summaries of {} users for {}, partition {} of {}", users, month, partition, partitions);
+    }
+
+    @Override
+    @Transactional
     public Training createTraining(TrainingUpdateDto training) {
-        User user = userRepository.findById(training.getUserId())
-                .orElseThrow(() -> new UserNotFoundException(training.getUserId()));
+        User user = managedUser(training.getUserId());
+
+        UUID sessionId = training.getSessionId();
+        if (sessionId == null) {
+            return publishCreated(trainingRepository.save(toTraining(training, user)));
+        }
+
+        int inserted = trainingRepository.insertIfAbsent(sessionId, user.getId(), training.getStartTime(),
+                training.getEndTime(), ActivityType.valueOf(training.getActivityType()).ordinal(),
+                training.getDistance(), training.getAverageSpeed());
+        Training storedTraining = trainingRepository.findBySessionId(sessionId).orElseThrow();
+        if (inserted == 0) {
+            if (!storedTraining.getUser().getId().equals(user.getId())) {
+                throw new ConflictException(sessionOfAnotherUser(sessionId));
+            }
+            log.info("Training of session {} already exists", sessionId);
+            return storedTraining;
+        }
+        return publishCreated(storedTraining);
+    }
+
+    /**
+     * Loads the user a training is written for into the current persistence context. The {@link UserProvider} hands
+     * out detached copies, which must not be attached to managed trainings.
+     */
+    private User managedUser(Long userId) {
+        return Optional.ofNullable(entityManager.find(User.class, userId))
+                .orElseThrow(() -> new UserNotFoundException(userId));
+    }
+
+    private Training publishCreated(Training training) {
+        eventPublisher.publishEvent(new TrainingCreatedEvent(training.getId(), training.getUser().getId(),
+                training.getDistance(), training.getStartTime(), training.getEndTime(), training.getActivityType(),
+                training.getAverageSpeed()));
+        return training;
+    }
+
+    @Override
+    @Transactional
+    public List<TrainingBatchItemResult> createTrainings(List<TrainingUpdateDto> trainings) {
+        if (trainings.size() > MAX_BATCH_SIZE) {
+            throw new BusinessException("Batch must not have more than %d trainings, had %d"
+                    .formatted(MAX_BATCH_SIZE, trainings.size()));
+        }
+        long start = System.nanoTime();
+
+        Map<Long, User> users = userProvider.getUsersByIds(trainings.stream()
+                        .map(TrainingUpdateDto::getUserId)
+                        .filter(Objects::nonNull)
+                        .collect(Collectors.toSet()))
+                .stream()
+                .collect(Collectors.toMap(User::getId, Function.identity()));
+
+        List<Training> newTrainings = new ArrayList<>(Collections.nCopies(trainings.size(), null));
+        List<String> errors = new ArrayList<>(Collections.nCopies(trainings.size(), null));
+        List<Training> trainingsToSave = new ArrayList<>(trainings.size());
+        List<Integer> sessionIndexes = new ArrayList<>();
+        for (int i = 0; i < trainings.size(); i++) {
+            TrainingUpdateDto training = trainings.get(i);
+            String error = validate(training, users);
+            if (error != null) {
+                errors.set(i, error);
+            } else if (training.getSessionId() != null) {
+                sessionIndexes.add(i);
+            } else {
+                Training newTraining = toTraining(training, users.get(training.getUserId()));
+                trainingsToSave.add(newTraining);
+                newTrainings.set(i, newTraining);
+            }
+        }
+        List<Training> createdTrainings = new ArrayList<>(trainingsToSave);
+        createdTrainings.addAll(insertIfAbsent(trainings, sessionIndexes, newTrainings, errors));
+        trainingRepository.saveAll(trainingsToSave);
+        trainingRepository.flush();
+        // listeners write with native statements, each flushing the persistence context, which would otherwise
+        // dirty check all the stored trainings for every event
+        entityManager.clear();
+        createdTrainings.forEach(this::publishCreated);
+
+        List<TrainingBatchItemResult> results = new ArrayList<>(trainings.size());
+        for (int i = 0; i < trainings.size(); i++) {
+            Training training = newTrainings.get(i);
+            if (training != null) {
+                results.add(TrainingBatchItemResult.created(i, training.getId()));
+            } else {
+                results.add(TrainingBatchItemResult.rejected(i, errors.get(i)));
+            }
+        }
 
+        long micros = Math.max(1, (System.nanoTime() - start) / 1_000);
+        log.info("Created {} of {} trainings in {} us, {} trainings/s",
+                createdTrainings.size(), trainings.size(), micros, createdTrainings.size() * 1_000_000L / micros);
+        return results;
+    }
+
+    /**
+     * Inserts the trainings of the given indexes, which have a session ID, unless a training of the session exists,
+     * with one JDBC batch of single-statement upserts, so that concurrent batches of the same sessions do not fail on
+     * the unique session ID. The stored trainings are then read once, to set the trainings or the errors of the items.
+     *
+     * @return trainings, which have been inserted
+     */
+    private List<Training> insertIfAbsent(List<TrainingUpdateDto> trainings, List<Integer> indexes,
+                                          List<Training> newTrainings, List<String> errors) {
+        if (indexes.isEmpty()) {
+            return List.of();
+        }
+        int[] inserted = jdbcTemplate.batchUpdate(INSERT_IF_ABSENT, indexes.stream()
+                .map(trainings::get)
+                .map(training -> new Object[]{training.getSessionId(), training.getUserId(), training.getStartTime(),
+                        training.getEndTime(), ActivityType.valueOf(training.getActivityType()).ordinal(),
+                        training.getDistance(), training.getAverageSpeed()})
+                .toList());
+        Map<UUID, Training> trainingsBySession = trainingRepository.findBySessionIdIn(indexes.stream()
+                        .map(index -> trainings.get(index).getSessionId())
+                        .collect(Collectors.toSet()))
+                .stream()
+                .collect(Collectors.toMap(Training::getSessionId, Function.identity()));
+
+        List<Training> insertedTrainings = new ArrayList<>();
+        for (int i = 0; i < indexes.size(); i++) {
+            int index = indexes.get(i);
+            TrainingUpdateDto training = trainings.get(index);
+            Training storedTraining = trainingsBySession.get(training.getSessionId());
+            if (!storedTraining.getUser().getId().equals(training.getUserId())) {
+                errors.set(index, sessionOfAnotherUser(training.getSessionId()));
+                continue;
+            }
+            newTrainings.set(index, storedTraining);
+            if (inserted[i] > 0) {
+                insertedTrainings.add(storedTraining);
+            }
+        }
+        return insertedTrainings;
+    }
+
+    /**
+     * Session IDs are unique across all users, a session ID of another user's training is rejected instead of
+     * returning that training.
+     */
+    private static String sessionOfAnotherUser(UUID sessionId) {
+        return "Session %s belongs to a training of another user".formatted(sessionId);
+    }
+
+    @Nullable
+    private static String validate(TrainingUpdateDto training, Map<Long, User> users) {
+        if (training.getUserId() == null || training.getStartTime() == null || training.getEndTime() == null
+                || training.getActivityType() == null) {
+            return "userId, startTime, endTime and activityType are required";
+        }
+        try {
+            ActivityType.valueOf(training.getActivityType());
+        } catch (IllegalArgumentException e) {
+            return "Unknown activity type " + training.getActivityType();
+        }
+        if (!users.containsKey(training.getUserId())) {
+            return new UserNotFoundException(training.getUserId()).getMessage();
+        }
+        return null;
+    }
+
+    private static Training toTraining(TrainingUpdateDto training, User user) {
         Training newTraining = new Training(
                 user,
                 training.getStartTime(),
@@ -63,16 +405,21 @@ class TrainingServiceImpl implements TrainingProvider, TrainingService {
                 training.getDistance(),
                 training.getAverageSpeed()
         );
-        return trainingRepository.save(newTraining);
+        newTraining.setSessionId(training.getSessionId());
+        return newTraining;
     }
 
     @Override
+    @Transactional
     public Training updateTraining(Long id, TrainingUpdateDto training) {
         return trainingRepository.findById(id)
                 .map(existingTraining -> {
 
-                    User user = userRepository.findById(training.getUserId())
-                            .orElseThrow(() -> new UserNotFoundException(training.getUserId()));
+                    User user = managedUser(training.getUserId());
+                    Long previousUserId = existingTraining.getUser().getId();
+                    double previousDistance = existingTraining.getDistance();
+                    LocalDateTime previousStartTime = existingTraining.getStartTime();
+                    ActivityType previousActivityType = existingTraining.getActivityType();
 
                     existingTraining.setUser(user);
                     existingTraining.setStartTime(training.getStartTime());
@@ -80,9 +427,31 @@ class TrainingServiceImpl implements TrainingProvider, TrainingService {
                     existingTraining.setActivityType(ActivityType.valueOf(training.getActivityType()));
                     existingTraining.setDistance(training.getDistance());
                     existingTraining.setAverageSpeed(training.getAverageSpeed());
-                    return trainingRepository.save(existingTraining);
+                    Training updatedTraining = trainingRepository.save(existingTraining);
+                    eventPublisher.publishEvent(new TrainingUpdatedEvent(id, previousUserId, previousDistance,
+                            user.getId(), updatedTraining.getDistance(), previousStartTime, previousActivityType,
+                            updatedTraining.getStartTime(), updatedTraining.getActivityType()));
+                    return updatedTraining;
                 })
                 .orElseThrow(() -> new TrainingNotFoundException(id));
     }
 
+    @Override
+    @Transactional
+    public int rebuildMonthlySummaries(YearMonth month) {
+        LocalDate monthStart = month.atDay(1);
+        LocalDateTime from = monthStart.atStartOfDay();
+        LocalDateTime to = month.plusMonths(1).atDay(1).atStartOfDay();
+        int written = summaryRepository.recomputeMonth(monthStart, from, to);
+        int deleted = summaryRepository.deleteEmptyOfMonth(monthStart, from, to);
+        log.info("Rebuilt {} monthly summaries for {}, deleted {} without trainings", written, month, deleted);
+        return written;
+    }
+
+    @EventListener
+    void onUserDeletion(UserDeletionEvent event) {
+        int deleted = trainingRepository.deleteByUserIdIn(event.userIds());
+        log.debug("Deleted {} trainings of {} deleted users", deleted, event.userIds().size());
+    }
+
 }
@@ -0,0 +1,100 @@
+/*
+ ____            _            _____ _             _     _      ___ ___ ___ ___ ___
+|    \ ___ _____|_|___ ___   |   __| |_ ___ ___  |_|___| |_   | . | . | . |_  |  _|
+|  |  | .'|     | | .'|   |  |__   |  _|  _| . | | | -_| '_|  |_  |_  | . |_  | . |
+|____/|__,|_|_|_|_|__,|_|_|  |_____|_| |_| |___|_| |___|_,_|  |___|___|___|___|___|
+                                               |___|
+ */
+package pl.wsb.fitnesstracker.training.internal;
+
+import pl.wsb.fitnesstracker.training.api.Training;
+import pl.wsb.fitnesstracker.training.api.TrainingSearchCriteria;
+
+import jakarta.persistence.criteria.Order;
+import jakarta.persistence.criteria.Predicate;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Specifications of {@link Training} queries built at runtime. Only the given criteria become predicates, instead of
+ * {@code (:param is null or ...)} conditions, so that the database can pick the index matching the actual combination.
+ */
+final class TrainingSpecifications {
+
+    private TrainingSpecifications() {
+    }
+
+    static Specification<Training> matching(TrainingSearchCriteria criteria) {
+        return (root, query, builder) -> {
+            List<Predicate> predicates = new ArrayList<>();
+            if (criteria.userId() != null) {
+                predicates.add(builder.equal(root.get("user").get("id"), criteria.userId()));
+            }
+            if (criteria.activityType() != null) {
+                predicates.add(builder.equal(root.get("activityType"), criteria.activityType()));
+            }
+            if (criteria.from() != null) {
+                predicates.add(builder.greaterThanOrEqualTo(root.get("startTime"), criteria.from()));
+            }
+            if (criteria.to() != null) {
+                predicates.add(builder.lessThan(root.get("startTime"), criteria.to()));
+            }
+            if (criteria.minDistance() != null) {
+                predicates.add(builder.greaterThanOrEqualTo(root.get("distance"), criteria.minDistance()));
+            }
+            if (criteria.maxDistance() != null) {
+                predicates.add(builder.lessThanOrEqualTo(root.get("distance"), criteria.maxDistance()));
+            }
+            return builder.and(predicates.toArray(Predicate[]::new));
+        };
+    }
+
+    /**
+     * Orders trainings by start time and ID, as the keyset of {@link #startedAfter(LocalDateTime, long)}. The order
+     * is part of the specification, as the {@code Sort} of a fluent query is rendered twice into the ORDER BY clause,
+     * which keeps the database from reading the rows in the order of the start time index.
+     * <p>
+     * The user and activity type the criteria match exactly are put in front, in the column order of the indexes.
+     * They are the same for all matched rows, so the order does not change, but the ORDER BY then matches
+     * the columns of the index the rows are read from, which the database needs to skip sorting them and to prefer
+     * that index over the one of the user foreign key.
+     *
+     * @param criteria criteria the trainings are matched by
+     * @return specification ordering the trainings without restricting them
+     */
+    static Specification<Training> orderedByStartTime(TrainingSearchCriteria criteria) {
+        return (root, query, builder) -> {
+            List<Order> orders = new ArrayList<>(4);
+            if (criteria.userId() != null) {
+                orders.add(builder.asc(root.get("user").get("id")));
+            }
+            if (criteria.activityType() != null) {
+                orders.add(builder.asc(root.get("activityType")));
+            }
+            orders.add(builder.asc(root.get("startTime")));
+            orders.add(builder.asc(root.get("id")));
+            query.orderBy(orders);
+            return null;
+        };
+    }
+
+    /**
+     * Matches trainings following the given keyset position in the order of start time and ID. The redundant
+     * {@code startTime >= afterStartTime} condition lets the database seek the start time index to the position.
+     *
+     * @param afterStartTime start time of the last training of the previous page
+     * @param afterId        ID of the last training of the previous page
+     * @return specification of the trainings after the position
+     */
+    static Specification<Training> startedAfter(LocalDateTime afterStartTime, long afterId) {
+        return (root, query, builder) -> builder.and(
+                builder.greaterThanOrEqualTo(root.get("startTime"), afterStartTime),
+                builder.or(
+                        builder.greaterThan(root.get("startTime"), afterStartTime),
+                        builder.greaterThan(root.get("id"), afterId)));
+    }
+
+}
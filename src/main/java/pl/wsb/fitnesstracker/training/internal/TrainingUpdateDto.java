@@ -7,9 +7,11 @@
  */
 package pl.wsb.fitnesstracker.training.internal;
 
+import jakarta.annotation.Nullable;
 import lombok.Getter;
 
 import java.time.LocalDateTime;
+import java.util.UUID;
 
 @Getter
 public class TrainingUpdateDto {
@@ -19,14 +21,18 @@ public class TrainingUpdateDto {
     private final String activityType;
     private final double distance;
     private final double averageSpeed;
+    @Nullable
+    private final UUID sessionId;
 
-    public TrainingUpdateDto(Long userId, LocalDateTime startTime, LocalDateTime endTime, String activityType, double distance, double averageSpeed) {
+    public TrainingUpdateDto(Long userId, LocalDateTime startTime, LocalDateTime endTime, String activityType, double distance, double averageSpeed,
+                             @Nullable UUID sessionId) {
         this.userId = userId;
         this.startTime = startTime;
         this.endTime = endTime;
         this.activityType = activityType;
         this.distance = distance;
         this.averageSpeed = averageSpeed;
+        this.sessionId = sessionId;
     }
 
     public Long getUserId() {
@@ -52,4 +58,13 @@ public class TrainingUpdateDto {
     public double getAverageSpeed() {
         return averageSpeed;
     }
+
+    /**
+     * Client generated identifier of the training, optional. Creating a training with the session ID of an existing
+     * one does not create a duplicate.
+     */
+    @Nullable
+    public UUID getSessionId() {
+        return sessionId;
+    }
 }
\ No newline at end of file
@@ -7,6 +7,8 @@
  */
 package pl.wsb.fitnesstracker.user.api;
 
+import pl.wsb.fitnesstracker.user.internal.UserEmailIndexListener;
+
 import jakarta.annotation.Nullable;
 import jakarta.persistence.*;
 import lombok.AccessLevel;
@@ -16,13 +18,16 @@ import lombok.ToString;
 import java.time.LocalDate;
 
 @Entity
-@Table(name = "users")
+@Table(name = "users",
+       indexes = @Index(name = "idx_users_birthdate_id", columnList = "birthdate, id"))
+@EntityListeners(UserEmailIndexListener.class)
 @NoArgsConstructor(access = AccessLevel.PROTECTED)
 @ToString
 public class User {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "users_seq")
+    @SequenceGenerator(name = "users_seq", sequenceName = "users_seq", allocationSize = 50)
     @Nullable
     private Long id;
 
@@ -88,5 +93,17 @@ public class User {
     public void setBirthdate(LocalDate localDate) {
         this.birthdate = localDate;
     }
+
+    /**
+     * Creates a detached copy of the user with the same ID. Changes to the copy affect neither this instance nor
+     * the database, unless the copy is saved.
+     *
+     * @return copy of the user
+     */
+    public User copy() {
+        User copy = new User(firstName, lastName, birthdate, email);
+        copy.id = id;
+        return copy;
+    }
 }
 
@@ -0,0 +1,21 @@
+/*
+ ____            _            _____ _             _     _      ___ ___ ___ ___ ___
+|    \ ___ _____|_|___ ___   |   __| |_ ___ ___  |_|___| |_   | . | . | . |_  |  _|
+|  |  | .'|     | | .'|   |  |__   |  _|  _| . | | | -_| '_|  |_  |_  | . |_  | . |
+|____/|__,|_|_|_|_|__,|_|_|  |_____|_| |_| |___|_| |___|_,_|  |___|___|___|___|___|
+                                               |___|
+ */
+package pl.wsb.fitnesstracker.user.api;
+
+import java.util.Collection;
+
+/**
+ * Event published within the deleting transaction right before the users are removed. Modules keeping rows that
+ * reference users are expected to remove them for all the given IDs at once, as the event is published once
+ * per batch of deleted users.
+ *
+ * @param userIds IDs of the users being deleted
+ */
+public record UserDeletionEvent(Collection<Long> userIds) {
+
+}
@@ -0,0 +1,21 @@
+/*
+ ____            _            _____ _             _     _      ___ ___ ___ ___ ___
+|    \ ___ _____|_|___ ___   |   __| |_ ___ ___  |_|___| |_   | . | . | . |_  |  _|
+|  |  | .'|     | | .'|   |  |__   |  _|  _| . | | | -_| '_|  |_  |_  | . |_  | . |
+|____/|__,|_|_|_|_|__,|_|_|  |_____|_| |_| |___|_| |___|_,_|  |___|___|___|___|___|
+                                               |___|
+ */
+package pl.wsb.fitnesstracker.user.api;
+
+import jakarta.annotation.Nullable;
+
+/**
+ * UserImportFailure is a reason why a single user of a bulk import was not imported.
+ *
+ * @param index  zero-based index of the user in the input
+ * @param email  email of the user, {@code null} if not known
+ * @param reason description of the failure
+ */
+public record UserImportFailure(int index, @Nullable String email, String reason) {
+
+}
@@ -0,0 +1,20 @@
+/*
+ ____            _            _____ _             _     _      ___ ___ ___ ___ ___
+|    \ ___ _____|_|___ ___   |   __| |_ ___ ___  |_|___| |_   | . | . | . |_  |  _|
+|  |  | .'|     | | .'|   |  |__   |  _|  _| . | | | -_| '_|  |_  |_  | . |_  | . |
+|____/|__,|_|_|_|_|__,|_|_|  |_____|_| |_| |___|_| |___|_,_|  |___|___|___|___|___|
+                                               |___|
+ */
+package pl.wsb.fitnesstracker.user.api;
+
+import java.util.List;
+
+/**
+ * UserImportResult is a summary of a bulk import of users.
+ *
+ * @param imported number of imported users
+ * @param failures users which were not imported, ordered by their index in the input
+ */
+public record UserImportResult(int imported, List<UserImportFailure> failures) {
+
+}
@@ -7,9 +7,16 @@
  */
 package pl.wsb.fitnesstracker.user.api;
 
+import pl.wsb.fitnesstracker.pagination.api.KeysetPage;
+import pl.wsb.fitnesstracker.user.internal.UserSimpleDto;
+
+import jakarta.annotation.Nullable;
+
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 public interface UserProvider {
 
@@ -22,6 +29,23 @@ public interface UserProvider {
      */
     Optional<User> getUser(Long userId);
 
+    /**
+     * Retrieves a user based on their email address (exact match).
+     * If the user with given email is not found, then {@link Optional#empty()} will be returned.
+     *
+     * @param email email of the user to be searched
+     * @return An {@link Optional} containing the located user, or {@link Optional#empty()} if not found
+     */
+    Optional<User> getUserByEmail(String email);
+
+    /**
+     * Retrieves users with the given IDs with a single query. Unknown IDs are skipped.
+     *
+     * @param userIds IDs of the users to be searched
+     * @return List of the found users, in no particular order
+     */
+    List<User> getUsersByIds(Collection<Long> userIds);
+
     /**
      * Retrieves all users.
      *
@@ -29,8 +53,51 @@ public interface UserProvider {
      */
     List<User> getAllUsers();
 
+    /**
+     * Retrieves one page of users ordered by ID.
+     *
+     * @param cursor {@link KeysetPage#nextCursor()} of the previous page, or {@code null} for the first page
+     * @param limit  maximum number of users on the page, at most {@link KeysetPage#MAX_LIMIT}
+     * @return page of users
+     */
+    KeysetPage<User> getUsers(@Nullable String cursor, int limit);
+
+    /**
+     * Passes all users, ordered by ID, to the given action. Users are read from a database cursor and detached once
+     * processed, so memory usage does not depend on the number of users.
+     *
+     * @param action action to be performed for each user
+     */
+    void forEachUser(Consumer<User> action);
+
+    /**
+     * Retrieves one page of users in simple format, ordered by ID. Only the needed columns are queried,
+     * no {@link User} entities are loaded.
+     *
+     * @param cursor {@link KeysetPage#nextCursor()} of the previous page, or {@code null} for the first page
+     * @param limit  maximum number of users on the page, at most {@link KeysetPage#MAX_LIMIT}
+     * @return page of users in simple format
+     */
+    KeysetPage<UserSimpleDto> getSimpleUsers(@Nullable String cursor, int limit);
+
+    /**
+     * Passes all users in simple format, ordered by ID, to the given action. Only the needed columns are read from
+     * a database cursor, no {@link User} entities are loaded.
+     *
+     * @param action action to be performed for each user
+     */
+    void forEachSimpleUser(Consumer<UserSimpleDto> action);
+
     List<User> getUsersByEmailPart(String emailPart);
 
-    List<User> getUsersBornAfter(LocalDate date);
+    /**
+     * Retrieves one page of users born after the given date, ordered by birthdate and ID.
+     *
+     * @param date   date after which the users were born
+     * @param cursor {@link KeysetPage#nextCursor()} of the previous page, or {@code null} for the first page
+     * @param limit  maximum number of users on the page, at most {@link KeysetPage#MAX_LIMIT}
+     * @return page of users
+     */
+    KeysetPage<User> getUsersBornAfter(LocalDate date, @Nullable String cursor, int limit);
 
 }
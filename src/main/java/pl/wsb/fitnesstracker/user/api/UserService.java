@@ -7,6 +7,10 @@
  */
 package pl.wsb.fitnesstracker.user.api;
 
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.function.UnaryOperator;
+
 /**
  * Interface (API) for modifying operations on {@link User} entities through the API.
  * Implementing classes are responsible for executing changes within a database transaction, whether by continuing an existing transaction or creating a new one if required.
@@ -17,6 +21,36 @@ public interface UserService {
 
     User updateUser(User user);
 
+    /**
+     * Applies the changes to the current state of a user, freshly loaded from the database, and saves it.
+     *
+     * @param userId  ID of the user to be updated
+     * @param changes function changing the loaded user and returning the user to be saved
+     * @return updated user
+     * @throws UserNotFoundException if there is no user with the given ID
+     */
+    User updateUser(Long userId, UnaryOperator<User> changes);
+
     void deleteUserById(Long userId);
 
+    /**
+     * Deletes users with the given IDs together with all rows referencing them (see {@link UserDeletionEvent}).
+     * Users are deleted in chunks with a few set-based statements each, all within one transaction.
+     *
+     * @param userIds IDs of the users to be deleted, unknown IDs are ignored
+     * @return number of deleted users
+     */
+    int deleteUsersByIds(Collection<Long> userIds);
+
+    /**
+     * Imports users in chunks, each inserted in JDBC batches within its own transaction. Invalid users, e.g. with
+     * missing fields or emails that are already taken, are reported as failures without aborting the import.
+     * An exception thrown by the iterator itself (e.g. malformed input) is reported as a failure and ends the import,
+     * users read before it stay imported.
+     *
+     * @param users users to be imported, without IDs
+     * @return number of imported users and failures of the rejected ones
+     */
+    UserImportResult importUsers(Iterator<User> users);
+
 }
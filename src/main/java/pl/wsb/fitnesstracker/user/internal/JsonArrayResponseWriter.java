@@ -0,0 +1,45 @@
+/*
+ ____            _            _____ _             _     _      ___ ___ ___ ___ ___
+|    \ ___ _____|_|___ ___   |   __| |_ ___ ___  |_|___| |_   | . | . | . |_  |  _|
+|  |  | .'|     | | .'|   |  |__   |  _|  _| . | | | -_| '_|  |_  |_  | . |_  | . |
+|____/|__,|_|_|_|_|__,|_|_|  |_____|_| |_| |___|_| |___|_,_|  |___|___|___|___|___|
+                                               |___|
+ */
+package pl.wsb.fitnesstracker.user.internal;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+
+/**
+ * Writes a JSON array straight to the HTTP response, element by element, so that large results are serialized
+ * without building the whole list in memory first.
+ */
+@Component
+class JsonArrayResponseWriter {
+
+    private final ObjectWriter objectWriter;
+
+    JsonArrayResponseWriter(ObjectMapper objectMapper) {
+        this.objectWriter = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+
+    /**
+     * Starts the JSON array in the response body. The array is closed with the returned writer.
+     *
+     * @param response HTTP response to write to
+     * @return writer accepting the array elements
+     * @throws IOException if the response body cannot be written
+     */
+    SequenceWriter open(HttpServletResponse response) throws IOException {
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        return objectWriter.writeValuesAsArray(response.getOutputStream());
+    }
+
+}
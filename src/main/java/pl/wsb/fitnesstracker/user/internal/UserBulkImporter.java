@@ -0,0 +1,170 @@
+/*
+ ____            _            _____ _             _     _      ___ ___ ___ ___ ___
+|    \ ___ _____|_|___ ___   |   __| |_ ___ ___  |_|___| |_   | . | . | . |_  |  _|
+|  |  | .'|     | | .'|   |  |__   |  _|  _| . | | | -_| '_|  |_  |_  | . |_  | . |
+|____/|__,|_|_|_|_|__,|_|_|  |_____|_| |_| |___|_| |___|_,_|  |___|___|___|___|___|
+                                               |___|
+ */
+package pl.wsb.fitnesstracker.user.internal;
+
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import pl.wsb.fitnesstracker.user.api.User;
+import pl.wsb.fitnesstracker.user.api.UserImportFailure;
+import pl.wsb.fitnesstracker.user.api.UserImportResult;
+
+import jakarta.annotation.Nullable;
+import jakarta.persistence.EntityManager;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * Imports users in chunks of {@value #CHUNK_SIZE}. Users that would violate a constraint are filtered out before the
+ * chunk is inserted, so that a single bad row does not abort its chunk. The remaining users are persisted and flushed
+ * in one transaction per chunk, which Hibernate turns into JDBC batches as {@link User} IDs come from a sequence.
+ * If the chunk still fails, e.g. because a concurrent request took one of the emails meanwhile, its users are
+ * retried one by one.
+ */
+@Component
+class UserBulkImporter {
+
+    static final int CHUNK_SIZE = 1_000;
+
+    private final UserRepository userRepository;
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+    private final Logger log = Logger.getLogger(UserBulkImporter.class.getName());
+
+    UserBulkImporter(UserRepository userRepository, EntityManager entityManager, TransactionTemplate transactionTemplate) {
+        this.userRepository = userRepository;
+        this.entityManager = entityManager;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    UserImportResult importUsers(Iterator<User> users) {
+        long start = System.nanoTime();
+        List<UserImportFailure> failures = new ArrayList<>();
+        List<Row> chunk = new ArrayList<>(CHUNK_SIZE);
+        int imported = 0;
+        int index = 0;
+        boolean hasNext = true;
+
+        while (hasNext) {
+            try {
+                hasNext = users.hasNext();
+                if (hasNext) {
+                    chunk.add(new Row(index, users.next()));
+                    index++;
+                }
+            } catch (RuntimeException e) {
+                failures.add(new UserImportFailure(index, null, "Malformed user: " + e.getMessage()));
+                hasNext = false;
+            }
+
+            if (chunk.size() == CHUNK_SIZE || (!hasNext && !chunk.isEmpty())) {
+                imported += importChunk(chunk, failures);
+                chunk.clear();
+            }
+        }
+
+        failures.sort(Comparator.comparingInt(UserImportFailure::index));
+        long millis = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+        log.info("Imported %d users (%d failed) in %d ms, %d users/s"
+                .formatted(imported, failures.size(), millis, imported * 1000L / millis));
+        return new UserImportResult(imported, failures);
+    }
+
+    private int importChunk(List<Row> chunk, List<UserImportFailure> failures) {
+        List<Row> valid = new ArrayList<>(chunk.size());
+        Set<String> emails = new HashSet<>();
+        for (Row row : chunk) {
+            String reason = validate(row.user());
+            if (reason == null && !emails.add(row.user().getEmail())) {
+                reason = "Duplicate email in request";
+            }
+            if (reason == null) {
+                valid.add(row);
+            } else {
+                failures.add(row.failure(reason));
+            }
+        }
+
+        Set<String> existingEmails = emails.isEmpty() ? Set.of() : userRepository.findExistingEmails(emails);
+        List<Row> rows = new ArrayList<>(valid.size());
+        for (Row row : valid) {
+            if (existingEmails.contains(row.user().getEmail())) {
+                failures.add(row.failure("Email is already taken"));
+            } else {
+                rows.add(row);
+            }
+        }
+
+        try {
+            persist(rows.stream().map(Row::user).toList());
+            return rows.size();
+        } catch (DataIntegrityViolationException e) {
+            log.warning("Chunk of %d users failed, retrying one by one: %s".formatted(rows.size(), e.getMessage()));
+            return importOneByOne(rows, failures);
+        }
+    }
+
+    private int importOneByOne(List<Row> rows, List<UserImportFailure> failures) {
+        int imported = 0;
+        for (Row row : rows) {
+            try {
+                persist(List.of(copyOf(row.user())));
+                imported++;
+            } catch (DataIntegrityViolationException e) {
+                failures.add(row.failure("Constraint violation: " + e.getMostSpecificCause().getMessage()));
+            }
+        }
+        return imported;
+    }
+
+    private void persist(List<User> users) {
+        if (users.isEmpty()) {
+            return;
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            // flushed by the repository, which translates a constraint violation to a DataIntegrityViolationException
+            userRepository.saveAllAndFlush(users);
+            entityManager.clear();
+        });
+    }
+
+    @Nullable
+    private static String validate(User user) {
+        if (user.getId() != null) {
+            return "User must not have an ID";
+        }
+        if (user.getFirstName() == null || user.getLastName() == null || user.getBirthdate() == null
+                || user.getEmail() == null) {
+            return "Missing required field";
+        }
+        return null;
+    }
+
+    /**
+     * Copy of a user whose insert was rolled back, as it already got an ID assigned.
+     */
+    private static User copyOf(User user) {
+        return new User(user.getFirstName(), user.getLastName(), user.getBirthdate(), user.getEmail());
+    }
+
+    private record Row(int index, User user) {
+
+        UserImportFailure failure(String reason) {
+            return new UserImportFailure(index, user.getEmail(), reason);
+        }
+
+    }
+
+}
@@ -0,0 +1,26 @@
+/*
+ ____            _            _____ _             _     _      ___ ___ ___ ___ ___
+|    \ ___ _____|_|___ ___   |   __| |_ ___ ___  |_|___| |_   | . | . | . |_  |  _|
+|  |  | .'|     | | .'|   |  |__   |  _|  _| . | | | -_| '_|  |_  |_  | . |_  | . |
+|____/|__,|_|_|_|_|__,|_|_|  |_____|_| |_| |___|_| |___|_,_|  |___|___|___|___|___|
+                                               |___|
+ */
+package pl.wsb.fitnesstracker.user.internal;
+
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Configuration class for caching of users. The cache is created by Spring Boot from {@code spring.cache.*}
+ * properties, which bound its size and time to live and enable the statistics published as actuator metrics.
+ */
+@Configuration
+@EnableCaching
+class UserCacheConfig {
+
+    /**
+     * Name of the cache of users by ID.
+     */
+    static final String USERS_CACHE = "users";
+
+}
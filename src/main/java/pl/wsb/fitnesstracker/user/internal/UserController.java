@@ -7,12 +7,27 @@
  */
 package pl.wsb.fitnesstracker.user.internal;
 
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import jakarta.annotation.Nullable;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import pl.wsb.fitnesstracker.pagination.api.KeysetPage;
+import pl.wsb.fitnesstracker.pagination.api.KeysetPages;
 import pl.wsb.fitnesstracker.user.api.*;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.time.LocalDate;
+import java.util.Iterator;
 import java.util.List;
+import java.util.function.Function;
 
 import static org.springframework.http.HttpStatus.*;
 
@@ -23,53 +38,97 @@ import static org.springframework.http.HttpStatus.*;
 @RequestMapping("/v1/users")
 class UserController {
 
+    /**
+     * Number of users fetched at once by the streaming endpoints.
+     */
+    private static final int STREAM_PAGE_SIZE = 500;
+
     private final UserServiceImpl userService;
     private final UserMapper userMapper;
     private final UserEmailSimpleMapper userEmailSimpleMapper;
+    private final JsonArrayResponseWriter jsonArrayResponseWriter;
+    private final ObjectReader userDtoReader;
 
-    UserController(UserServiceImpl userService, UserMapper userMapper, UserEmailSimpleMapper userEmailSimpleMapper) {
+    UserController(UserServiceImpl userService, UserMapper userMapper, UserEmailSimpleMapper userEmailSimpleMapper,
+                   JsonArrayResponseWriter jsonArrayResponseWriter, ObjectMapper objectMapper) {
         this.userService = userService;
         this.userEmailSimpleMapper = userEmailSimpleMapper;
         this.userMapper = userMapper;
+        this.jsonArrayResponseWriter = jsonArrayResponseWriter;
+        this.userDtoReader = objectMapper.readerFor(UserDto.class);
     }
 
     /**
-     * Get all users
+     * Get all users. They are streamed from a database cursor to the response as a JSON array of UserDto.
      *
-     * @return List of UserDto
+     * @param response HttpServletResponse
      */
     @GetMapping
-    public List<UserDto> getAllUsers() {
-        return userService.getAllUsers()
-                          .stream()
-                          .map(userMapper::toDto)
-                          .toList();
+    public void getAllUsers(HttpServletResponse response) throws IOException {
+        streamAllUsers(response, userMapper::toDto);
     }
 
     /**
-     * Get all users in simple format
+     * Get one page of users ordered by ID. The cursor of the next page is returned in the
+     * {@value KeysetPage#NEXT_CURSOR_HEADER} header.
      *
-     * @return List of UserSimpleDto
+     * @param limit maximum number of users on the page
+     * @param cursor cursor of the previous page, absent for the first page
+     * @return List of UserDto
+     */
+    @GetMapping(params = "limit")
+    public ResponseEntity<List<UserDto>> getUsers(@RequestParam int limit,
+                                                  @RequestParam(required = false) @Nullable String cursor) {
+        return KeysetPages.toResponse(userService.getUsers(cursor, limit).map(userMapper::toDto));
+    }
+
+    /**
+     * Get all users in simple format. Only the needed columns are streamed from a database cursor to the response
+     * as a JSON array.
+     *
+     * @param response HttpServletResponse
      */
     @GetMapping("/simple")
-    public List<UserSimpleDto> getAllSimpleUsers() {
-        return userService.getAllUsers()
-                .stream()
-                .map(userMapper::toSimpleDto)
-                .toList();
+    public void getAllSimpleUsers(HttpServletResponse response) throws IOException {
+        try (SequenceWriter writer = jsonArrayResponseWriter.open(response)) {
+            userService.forEachSimpleUser(user -> write(writer, user));
+        }
     }
 
     /**
-     * Get all users in detailed format
+     * Get one page of users in simple format, ordered by ID.
      *
+     * @param limit maximum number of users on the page
+     * @param cursor cursor of the previous page, absent for the first page
      * @return List of UserSimpleDto
      */
+    @GetMapping(value = "/simple", params = "limit")
+    public ResponseEntity<List<UserSimpleDto>> getSimpleUsers(@RequestParam int limit,
+                                                              @RequestParam(required = false) @Nullable String cursor) {
+        return KeysetPages.toResponse(userService.getSimpleUsers(cursor, limit));
+    }
+
+    /**
+     * Get all users in detailed format. They are streamed from a database cursor to the response as a JSON array.
+     *
+     * @param response HttpServletResponse
+     */
     @GetMapping("/details")
-    public List<UserDetailsDto> getAllDetailedUsers() {
-        return userService.getAllUsers()
-                .stream()
-                .map(userMapper::toDetailsDto)
-                .toList();
+    public void getAllDetailedUsers(HttpServletResponse response) throws IOException {
+        streamAllUsers(response, userMapper::toDetailsDto);
+    }
+
+    /**
+     * Get one page of users in detailed format, ordered by ID.
+     *
+     * @param limit maximum number of users on the page
+     * @param cursor cursor of the previous page, absent for the first page
+     * @return List of UserDetailsDto
+     */
+    @GetMapping(value = "/details", params = "limit")
+    public ResponseEntity<List<UserDetailsDto>> getDetailedUsers(@RequestParam int limit,
+                                                                 @RequestParam(required = false) @Nullable String cursor) {
+        return KeysetPages.toResponse(userService.getUsers(cursor, limit).map(userMapper::toDetailsDto));
     }
 
     /**
@@ -100,16 +159,40 @@ class UserController {
     }
 
     /**
-     * Get users born after a given date
+     * Get users born after a given date, ordered by birthdate. The users are fetched page by page and streamed to the
+     * response as a JSON array of UserDto, so the whole result is never held in memory.
      *
      * @param date LocalDate
-     * @return List of UserDto
+     * @param response HttpServletResponse
      */
     @GetMapping("/younger/{date}")
-    public List<UserDto> findUsersBornAfter(@PathVariable LocalDate date) {
-        return userService.getUsersBornAfter(date).stream()
-                .map(userMapper::toDto)
-                .toList();
+    public void findUsersBornAfter(@PathVariable LocalDate date, HttpServletResponse response) throws IOException {
+        try (SequenceWriter writer = jsonArrayResponseWriter.open(response)) {
+            String cursor = null;
+            do {
+                KeysetPage<User> page = userService.getUsersBornAfter(date, cursor, STREAM_PAGE_SIZE);
+                for (User user : page.content()) {
+                    writer.write(userMapper.toDto(user));
+                }
+                cursor = page.nextCursor();
+            } while (cursor != null);
+        }
+    }
+
+    /**
+     * Get one page of users born after a given date, ordered by birthdate. The cursor of the next page is returned
+     * in the {@value KeysetPage#NEXT_CURSOR_HEADER} header.
+     *
+     * @param date LocalDate
+     * @param limit maximum number of users on the page
+     * @param cursor cursor of the previous page, absent for the first page
+     * @return List of UserDto
+     */
+    @GetMapping(value = "/younger/{date}", params = "limit")
+    public ResponseEntity<List<UserDto>> findUsersBornAfter(@PathVariable LocalDate date,
+                                                            @RequestParam int limit,
+                                                            @RequestParam(required = false) @Nullable String cursor) {
+        return KeysetPages.toResponse(userService.getUsersBornAfter(date, cursor, limit).map(userMapper::toDto));
     }
 
     /**
@@ -131,6 +214,32 @@ class UserController {
         return createdUser;
     }
 
+    /**
+     * Import users in bulk. The body is either a JSON array or newline delimited JSON of UserDto, which is read
+     * as a stream, so that the whole request is never held in memory.
+     *
+     * @param request HttpServletRequest
+     * @return number of imported users and reasons why the others were rejected
+     */
+    @PostMapping(path = "/bulk", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public UserImportResult importUsers(HttpServletRequest request) throws IOException {
+        try (MappingIterator<UserDto> users = userDtoReader.readValues(request.getInputStream())) {
+            return userService.importUsers(new Iterator<>() {
+
+                @Override
+                public boolean hasNext() {
+                    return users.hasNext();
+                }
+
+                @Override
+                public User next() {
+                    return userMapper.toEntity(users.next());
+                }
+
+            });
+        }
+    }
+
     /**
      * Delete an existing user
      *
@@ -146,6 +255,18 @@ class UserController {
         }
     }
 
+    /**
+     * Delete users in bulk together with their trainings and statistics, e.g. to process a batch of purge requests.
+     * The deletion is done with a few set-based statements per chunk of users, in one transaction.
+     *
+     * @param userIds IDs of the users to be deleted
+     * @return number of requested and deleted users
+     */
+    @PostMapping("/purge")
+    public UserPurgeResultDto purgeUsers(@RequestBody List<Long> userIds) {
+        return new UserPurgeResultDto(userIds.size(), userService.deleteUsersByIds(userIds));
+    }
+
     /**
      * Update an existing user
      *
@@ -157,11 +278,23 @@ class UserController {
     @ResponseStatus(OK)
     public User updateUser(@PathVariable Long userId, @RequestBody UserDto userDto) {
         try {
-            User userDebug = userService.getUser(userId).orElseThrow(() -> new IllegalArgumentException("User with ID: " + userId + " was not found"));
-            User userUpdate = userMapper.toUpdateEntity(userDto, userDebug);
-            return userService.updateUser(userUpdate);
+            return userService.updateUser(userId, user -> userMapper.toUpdateEntity(userDto, user));
         } catch (Exception e) {
             throw new IllegalArgumentException("Not able to update user of ID: " + userId + ".\nError: " + e.getMessage());
         }
     }
+
+    private void streamAllUsers(HttpServletResponse response, Function<User, ?> mapper) throws IOException {
+        try (SequenceWriter writer = jsonArrayResponseWriter.open(response)) {
+            userService.forEachUser(user -> write(writer, mapper.apply(user)));
+        }
+    }
+
+    private static void write(SequenceWriter writer, Object value) {
+        try {
+            writer.write(value);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
 }
\ No newline at end of file
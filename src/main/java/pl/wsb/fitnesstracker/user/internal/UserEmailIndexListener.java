@@ -0,0 +1,59 @@
+/*
+ ____            _            _____ _             _     _      ___ ___ ___ ___ ___
+|    \ ___ _____|_|___ ___   |   __| |_ ___ ___  |_|___| |_   | . | . | . |_  |  _|
+|  |  | .'|     | | .'|   |  |__   |  _|  _| . | | | -_| '_|  |_  |_  | . |_  | . |
+|____/|__,|_|_|_|_|__,|_|_|  |_____|_| |_| |___|_| |___|_,_|  |___|___|___|___|___|
+                                               |___|
+ */
+package pl.wsb.fitnesstracker.user.internal;
+
+import pl.wsb.fitnesstracker.user.api.User;
+
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostUpdate;
+import jakarta.persistence.PreRemove;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+
+/**
+ * Keeps the {@link UserEmailTrigram} index in sync with the {@link User} entity. Hooked into the entity lifecycle,
+ * so that every write of a user (e.g. {@link UserServiceImpl#createUser(User)}, {@link UserServiceImpl#updateUser(User)},
+ * {@link UserServiceImpl#deleteUserById(Long)}) updates the index in the same transaction.
+ * The index is written with plain JDBC, as issuing JPA queries from within a flush is not allowed.
+ */
+public class UserEmailIndexListener {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public UserEmailIndexListener(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostPersist
+    void onPersist(User user) {
+        insertTrigrams(user);
+    }
+
+    @PostUpdate
+    void onUpdate(User user) {
+        deleteTrigrams(user);
+        insertTrigrams(user);
+    }
+
+    @PreRemove
+    void onRemove(User user) {
+        deleteTrigrams(user);
+    }
+
+    private void insertTrigrams(User user) {
+        List<Object[]> rows = UserEmailTrigram.trigramsOf(user.getEmail()).stream()
+                .map(trigram -> new Object[]{trigram, user.getId()})
+                .toList();
+        jdbcTemplate.batchUpdate("insert into user_email_trigrams (trigram, user_id) values (?, ?)", rows);
+    }
+
+    private void deleteTrigrams(User user) {
+        jdbcTemplate.update("delete from user_email_trigrams where user_id = ?", user.getId());
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ ____            _            _____ _             _     _      ___ ___ ___ ___ ___
+|    \ ___ _____|_|___ ___   |   __| |_ ___ ___  |_|___| |_   | . | . | . |_  |  _|
+|  |  | .'|     | | .'|   |  |__   |  _|  _| . | | | -_| '_|  |_  |_  | . |_  | . |
+|____/|__,|_|_|_|_|__,|_|_|  |_____|_| |_| |___|_| |___|_,_|  |___|___|___|___|___|
+                                               |___|
+ */
+package pl.wsb.fitnesstracker.user.internal;
+
+import jakarta.persistence.*;
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Entry of the trigram inverted index over lower-cased user emails. The primary key {@code (trigram, user_id)} serves
+ * the trigram lookups, the secondary index on {@code user_id} serves the re-indexing of a single user.
+ */
+@Entity
+@Table(name = "user_email_trigrams",
+       indexes = @Index(name = "idx_user_email_trigrams_user_id", columnList = "user_id"))
+@IdClass(UserEmailTrigram.Key.class)
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+public class UserEmailTrigram {
+
+    static final int LENGTH = 3;
+
+    @Id
+    @Column(name = "trigram", length = LENGTH, nullable = false)
+    private String trigram;
+
+    @Id
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    /**
+     * Splits the lower-cased text into its distinct trigrams.
+     *
+     * @param text email or part of the email
+     * @return distinct trigrams in order of appearance, empty if the text is shorter than {@value #LENGTH} characters
+     */
+    static Set<String> trigramsOf(String text) {
+        String normalized = normalize(text);
+        Set<String> trigrams = new LinkedHashSet<>();
+        for (int i = 0; i + LENGTH <= normalized.length(); i++) {
+            trigrams.add(normalized.substring(i, i + LENGTH));
+        }
+        return trigrams;
+    }
+
+    static String normalize(String text) {
+        return text.toLowerCase(Locale.ROOT);
+    }
+
+    public static class Key implements Serializable {
+
+        private String trigram;
+        private Long userId;
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key key)) return false;
+            return Objects.equals(trigram, key.trigram) && Objects.equals(userId, key.userId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(trigram, userId);
+        }
+    }
+}
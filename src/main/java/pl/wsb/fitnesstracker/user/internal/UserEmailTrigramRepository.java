@@ -0,0 +1,53 @@
+/*
+ ____            _            _____ _             _     _      ___ ___ ___ ___ ___
+|    \ ___ _____|_|___ ___   |   __| |_ ___ ___  |_|___| |_   | . | . | . |_  |  _|
+|  |  | .'|     | | .'|   |  |__   |  _|  _| . | | | -_| '_|  |_  |_  | . |_  | . |
+|____/|__,|_|_|_|_|__,|_|_|  |_____|_| |_| |___|_| |___|_,_|  |___|___|___|___|___|
+                                               |___|
+ */
+package pl.wsb.fitnesstracker.user.internal;
+
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Repository for the {@link UserEmailTrigram} index. The index itself is maintained by {@link UserEmailIndexListener}.
+ */
+interface UserEmailTrigramRepository extends JpaRepository<UserEmailTrigram, UserEmailTrigram.Key> {
+
+    /**
+     * Returns IDs of users whose email contains every one of the given trigrams. The result is a superset of the users
+     * whose email contains the searched text, as trigram positions are not taken into account.
+     * The index of users is written when they are flushed, which Hibernate would not do on its own before a query
+     * on another table, hence the query always flushes first.
+     *
+     * @param trigrams     distinct trigrams of the searched text
+     * @param trigramCount number of the given trigrams
+     * @return IDs of the candidate users
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FLUSH_MODE, value = "ALWAYS"))
+    @Query("""
+            select t.userId from UserEmailTrigram t
+            where t.trigram in :trigrams
+            group by t.userId
+            having count(t.trigram) = :trigramCount""")
+    List<Long> findUserIdsWithAllTrigrams(Collection<String> trigrams, long trigramCount);
+
+    /**
+     * Removes the index entries of the given users. Needed by bulk deletes of users, which bypass
+     * {@link UserEmailIndexListener}.
+     *
+     * @param userIds IDs of the users
+     */
+    @Modifying
+    @Query("delete from UserEmailTrigram t where t.userId in :userIds")
+    void deleteByUserIdIn(Collection<Long> userIds);
+
+}
@@ -0,0 +1,16 @@
+/*
+ ____            _            _____ _             _     _      ___ ___ ___ ___ ___
+|    \ ___ _____|_|___ ___   |   __| |_ ___ ___  |_|___| |_   | . | . | . |_  |  _|
+|  |  | .'|     | | .'|   |  |__   |  _|  _| . | | | -_| '_|  |_  |_  | . |_  | . |
+|____/|__,|_|_|_|_|__,|_|_|  |_____|_| |_| |___|_| |___|_,_|  |___|___|___|___|___|
+                                               |___|
+ */
+package pl.wsb.fitnesstracker.user.internal;
+
+/**
+ * UserPurgeResultDto is a summary of a bulk deletion of users.
+ *
+ * @param requested number of user IDs in the request
+ * @param deleted   number of users that existed and were deleted
+ */
+public record UserPurgeResultDto(int requested, int deleted) { }
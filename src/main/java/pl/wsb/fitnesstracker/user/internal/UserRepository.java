@@ -7,51 +7,126 @@
  */
 package pl.wsb.fitnesstracker.user.internal;
 
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 
 import pl.wsb.fitnesstracker.user.api.User;
 
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
-import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
 
 public interface UserRepository extends JpaRepository<User, Long> {
 
     /**
-     * Query searching users by email address. It matches by exact match.
+     * Query searching users by email address. It matches by exact match and is served by the unique index on the
+     * {@code email} column.
      *
      * @param email email of the user to search
      * @return {@link Optional} containing found user or {@link Optional#empty()} if none matched
      */
-    default Optional<User> findByEmail(String email) {
-        return findAll().stream()
-                        .filter(user -> Objects.equals(user.getEmail(), email))
-                        .findFirst();
-    }
+    Optional<User> findByEmail(String email);
 
     /**
-     * Query searching users by email address. It matches by ignoring case.
+     * Query searching users by part of the email address, ignoring case. It is evaluated by the database without the
+     * help of an index, so it is only used for parts too short for the {@link UserEmailTrigram} index.
      *
      * @param emailPart String email of the user to search
-     * @return {@link Optional} containing found user or {@link Optional#empty()} if none matched
+     * @return List of users whose email contains the given part
      */
-    default List<User> findByEmailPartIgnoreCase(String emailPart){
-        return findAll().stream()
-                .filter(user -> user.getEmail().toLowerCase().contains(emailPart.toLowerCase()))
-                .toList();
-    }
+    List<User> findByEmailContainingIgnoreCase(String emailPart);
 
     /**
-     * Query searching users by birthdate. It matches by exact match.
+     * Query searching users born after the given date, ordered by birthdate and ID. It is a keyset query served by the
+     * {@code (birthdate, id)} index: it continues after the user with the given birthdate and ID.
      *
-     * @param date LocalDate of the user to search
-     * @return {@link Optional} containing found user or {@link Optional#empty()} if none matched
+     * @param date           LocalDate after which the users were born
+     * @param afterBirthdate birthdate of the last user of the previous page
+     * @param afterId        ID of the last user of the previous page
+     * @param limit          maximum number of users to return
+     * @return List of users ordered by birthdate and ID
+     */
+    @Query("""
+            select u from User u
+            where u.birthdate > :date
+              and u.birthdate >= :afterBirthdate
+              and (u.birthdate > :afterBirthdate or u.id > :afterId)
+            order by u.birthdate, u.id""")
+    List<User> findBornAfter(LocalDate date, LocalDate afterBirthdate, Long afterId, Limit limit);
+
+    /**
+     * Query returning the users with ID greater than the given one, ordered by ID. It is a keyset query served by the
+     * primary key index.
+     *
+     * @param afterId ID of the last user of the previous page
+     * @param limit   maximum number of users to return
+     * @return List of users ordered by ID
+     */
+    @Query("select u from User u where u.id > :afterId order by u.id")
+    List<User> findAllAfter(Long afterId, Limit limit);
+
+    /**
+     * Query streaming all users ordered by ID from a forward-only database cursor. It has to be consumed within
+     * a transaction and the consumed users should be detached, so that they do not pile up in the persistence context.
+     *
+     * @return Stream of all users
+     */
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("select u from User u order by u.id")
+    Stream<User> streamAll();
+
+    /**
+     * Query returning the simple representation of users with ID greater than the given one, ordered by ID. Only the
+     * needed columns are selected and the result is not managed by the persistence context.
+     *
+     * @param afterId ID of the last user of the previous page
+     * @param limit   maximum number of users to return
+     * @return List of UserSimpleDto ordered by ID
+     */
+    @Query("""
+            select new pl.wsb.fitnesstracker.user.internal.UserSimpleDto(u.id, u.firstName, u.lastName)
+            from User u where u.id > :afterId order by u.id""")
+    List<UserSimpleDto> findAllSimpleAfter(Long afterId, Limit limit);
+
+    /**
+     * Query streaming the simple representation of all users ordered by ID from a forward-only database cursor.
+     * It has to be consumed within a transaction.
+     *
+     * @return Stream of UserSimpleDto
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    @Query("select new pl.wsb.fitnesstracker.user.internal.UserSimpleDto(u.id, u.firstName, u.lastName) from User u order by u.id")
+    Stream<UserSimpleDto> streamAllSimple();
+
+    /**
+     * Query searching which of the given emails are already taken.
+     *
+     * @param emails emails to be checked
+     * @return Set of emails that belong to existing users
+     */
+    @Query("select u.email from User u where u.email in :emails")
+    Set<String> findExistingEmails(Collection<String> emails);
+
+    /**
+     * Deletes users with the given IDs with a single statement, bypassing the persistence context, which is cleared
+     * afterwards. Rows referencing the users have to be deleted beforehand.
+     *
+     * @param userIds IDs of the users to be deleted
+     * @return number of deleted users
      */
-    default List<User> findByBirthdateAfter(LocalDate date){
-        return findAll().stream()
-                .filter(user -> user.getBirthdate().isAfter(date))
-                .toList();
-    }
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("delete from User u where u.id in :userIds")
+    int deleteByIdIn(Collection<Long> userIds);
 
 }
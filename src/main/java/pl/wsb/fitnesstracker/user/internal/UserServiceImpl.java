@@ -7,23 +7,60 @@
  */
 package pl.wsb.fitnesstracker.user.internal;
 
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import pl.wsb.fitnesstracker.pagination.api.KeysetCursor;
+import pl.wsb.fitnesstracker.pagination.api.KeysetPage;
 import pl.wsb.fitnesstracker.user.api.*;
 
+import jakarta.annotation.Nullable;
+import jakarta.persistence.EntityManager;
+
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
 import java.util.logging.Logger;
+import java.util.stream.Stream;
 
 @Service
 class UserServiceImpl implements UserService, UserProvider {
 
+    /**
+     * Maximum number of users deleted by a single set of statements, keeps the IN lists bounded.
+     */
+    static final int DELETE_CHUNK_SIZE = 1_000;
+
     private final UserRepository userRepository;
+    private final UserEmailTrigramRepository userEmailTrigramRepository;
+    private final EntityManager entityManager;
+    private final UserBulkImporter userBulkImporter;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Cache usersCache;
     private final Logger log = Logger.getLogger(UserServiceImpl.class.getName());
 
-    UserServiceImpl(UserRepository userRepository) {
+    UserServiceImpl(UserRepository userRepository, UserEmailTrigramRepository userEmailTrigramRepository,
+                    EntityManager entityManager, UserBulkImporter userBulkImporter,
+                    ApplicationEventPublisher eventPublisher, CacheManager cacheManager) {
         this.userRepository = userRepository;
+        this.userEmailTrigramRepository = userEmailTrigramRepository;
+        this.entityManager = entityManager;
+        this.userBulkImporter = userBulkImporter;
+        this.eventPublisher = eventPublisher;
+        this.usersCache = cacheManager.getCache(UserCacheConfig.USERS_CACHE);
     }
 
     /**
@@ -42,6 +79,17 @@ class UserServiceImpl implements UserService, UserProvider {
         return userRepository.save(user);
     }
 
+    /**
+     * Import new Users in JDBC batches, reporting the rejected ones
+     *
+     * @param users Users without IDs
+     * @return UserImportResult
+     */
+    @Override
+    public UserImportResult importUsers(final Iterator<User> users) {
+        return userBulkImporter.importUsers(users);
+    }
+
     /**
      * Get all Users
      * @return List of Users
@@ -51,12 +99,70 @@ class UserServiceImpl implements UserService, UserProvider {
         return userRepository.findAll();
     }
 
+    /**
+     * Get a page of Users ordered by ID
+     * @param cursor cursor of the previous page, or {@code null} for the first page
+     * @param limit maximum number of Users on the page
+     * @return page of Users
+     */
+    @Override
+    public KeysetPage<User> getUsers(@Nullable String cursor, int limit) {
+        KeysetPage.checkLimit(limit);
+
+        long afterId = cursor == null ? Long.MIN_VALUE : KeysetCursor.decode(cursor, 1).getLong(0);
+        List<User> users = userRepository.findAllAfter(afterId, Limit.of(limit + 1));
+        return KeysetPage.of(users, limit, last -> KeysetCursor.encode(last.getId()));
+    }
+
+    /**
+     * Stream all Users ordered by ID to the given action
+     * @param action action to be performed for each User
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public void forEachUser(Consumer<User> action) {
+        try (Stream<User> users = userRepository.streamAll()) {
+            users.forEach(user -> {
+                action.accept(user);
+                entityManager.detach(user);
+            });
+        }
+    }
+
+    /**
+     * Get a page of Users in simple format ordered by ID
+     * @param cursor cursor of the previous page, or {@code null} for the first page
+     * @param limit maximum number of Users on the page
+     * @return page of UserSimpleDto
+     */
+    @Override
+    public KeysetPage<UserSimpleDto> getSimpleUsers(@Nullable String cursor, int limit) {
+        KeysetPage.checkLimit(limit);
+
+        long afterId = cursor == null ? Long.MIN_VALUE : KeysetCursor.decode(cursor, 1).getLong(0);
+        List<UserSimpleDto> users = userRepository.findAllSimpleAfter(afterId, Limit.of(limit + 1));
+        return KeysetPage.of(users, limit, last -> KeysetCursor.encode(last.id()));
+    }
+
+    /**
+     * Stream all Users in simple format ordered by ID to the given action
+     * @param action action to be performed for each User
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public void forEachSimpleUser(Consumer<UserSimpleDto> action) {
+        try (Stream<UserSimpleDto> users = userRepository.streamAllSimple()) {
+            users.forEach(action);
+        }
+    }
+
     /**
      * Update an existing User overwrite
      * @param user User
      * @return User
      */
     @Override
+    @CacheEvict(cacheNames = UserCacheConfig.USERS_CACHE, key = "#user.id")
     public User updateUser(final User user) {
         if (user.getId() == null)
             throw new IllegalArgumentException("User has NULL id.");
@@ -64,47 +170,143 @@ class UserServiceImpl implements UserService, UserProvider {
     }
 
     /**
-     * Delete an existing User
+     * Update an existing User loaded from the database, bypassing the cache, so the changes are applied to its
+     * current state
+     * @param userId id of the user to be updated
+     * @param changes function changing the loaded User
+     * @return User
+     */
+    @Override
+    @CacheEvict(cacheNames = UserCacheConfig.USERS_CACHE, key = "#userId")
+    public User updateUser(final Long userId, final UnaryOperator<User> changes) {
+        User user = userRepository.findById(userId).orElseThrow(() -> new UserNotFoundException(userId));
+        return userRepository.save(changes.apply(user));
+    }
+
+    /**
+     * Delete an existing User together with its trainings and statistics
      * @param userId Long
      */
     @Override
+    @Transactional
+    @CacheEvict(cacheNames = UserCacheConfig.USERS_CACHE, key = "#userId", beforeInvocation = true)
     public void deleteUserById(final Long userId) {
         log.info("Deleting User with ID " + userId);
 
-        if (UserServiceImpl.this.getUser(userId).isEmpty())
+        if (deleteChunk(List.of(userId)) == 0)
             throw new IllegalArgumentException("There is no user with given ID.");
+    }
 
-        userRepository.deleteById(userId);
+    /**
+     * Delete Users with given IDs together with their trainings and statistics
+     * @param userIds IDs of the Users
+     * @return number of deleted Users
+     */
+    @Override
+    @Transactional
+    @CacheEvict(cacheNames = UserCacheConfig.USERS_CACHE, allEntries = true)
+    public int deleteUsersByIds(final Collection<Long> userIds) {
+        List<Long> distinctIds = new ArrayList<>(new TreeSet<>(userIds));
+        log.info("Deleting " + distinctIds.size() + " Users");
+
+        int deleted = 0;
+        for (int from = 0; from < distinctIds.size(); from += DELETE_CHUNK_SIZE) {
+            deleted += deleteChunk(distinctIds.subList(from, Math.min(from + DELETE_CHUNK_SIZE, distinctIds.size())));
+        }
+        return deleted;
+    }
+
+    private int deleteChunk(List<Long> userIds) {
+        eventPublisher.publishEvent(new UserDeletionEvent(userIds));
+        userEmailTrigramRepository.deleteByUserIdIn(userIds);
+        return userRepository.deleteByIdIn(userIds);
     }
 
     /**
-     * Get a User by ID
+     * Get a User by ID. Found Users are cached in the {@value UserCacheConfig#USERS_CACHE} cache, missing ones are
+     * not, so a User created later is visible right away. The cache holds a private copy of the User, that is never
+     * handed out: every caller gets its own detached copy, whether the User was cached or not, so changing the returned
+     * User cannot affect other callers.
      * @param userId id of the user to be searched
      * @return An {@link Optional} containing the located User, or {@link Optional#empty()} if not found
      */
     @Override
     public Optional<User> getUser(final Long userId) {
-        return userRepository.findById(userId);
+        User cached = usersCache.get(userId, User.class);
+        if (cached != null) {
+            return Optional.of(cached.copy());
+        }
+        Optional<User> user = userRepository.findById(userId);
+        user.ifPresent(found -> usersCache.put(userId, found.copy()));
+        return user.map(User::copy);
     }
 
     /**
-     * Get a User by part of an email
+     * Get Users by IDs
+     * @param userIds IDs of the users to be searched
+     * @return List of found Users
+     */
+    @Override
+    public List<User> getUsersByIds(final Collection<Long> userIds) {
+        return userRepository.findAllById(userIds);
+    }
+
+    /**
+     * Get a User by email
+     * @param email email of the user to be searched
+     * @return An {@link Optional} containing the located User, or {@link Optional#empty()} if not found
+     */
+    @Override
+    public Optional<User> getUserByEmail(final String email) {
+        return userRepository.findByEmail(email);
+    }
+
+    /**
+     * Get a User by part of an email, ignoring case. Candidates are looked up in the {@link UserEmailTrigram} index
+     * and verified against their current email, parts shorter than a trigram are searched by the database directly.
      * @param emailPart String
-     * @return List of Users
+     * @return List of Users ordered by ID
      */
     @Override
     public List<User> getUsersByEmailPart(String emailPart) {
-        return userRepository.findByEmailPartIgnoreCase(emailPart);
+        Set<String> trigrams = UserEmailTrigram.trigramsOf(emailPart);
+        if (trigrams.isEmpty()) {
+            return userRepository.findByEmailContainingIgnoreCase(emailPart);
+        }
+
+        List<Long> candidateIds = userEmailTrigramRepository.findUserIdsWithAllTrigrams(trigrams, trigrams.size());
+        if (candidateIds.isEmpty()) {
+            return List.of();
+        }
+
+        String normalizedPart = UserEmailTrigram.normalize(emailPart);
+        return userRepository.findAllById(candidateIds).stream()
+                .filter(user -> UserEmailTrigram.normalize(user.getEmail()).contains(normalizedPart))
+                .sorted(Comparator.comparing(User::getId))
+                .toList();
     }
 
     /**
-     * Get all Users born before a given date
+     * Get a page of Users born after a given date, ordered by birthdate and ID
      * @param date LocalDate
-     * @return List of Users
+     * @param cursor cursor of the previous page, or {@code null} for the first page
+     * @param limit maximum number of Users on the page
+     * @return page of Users
      */
     @Override
-    public List<User> getUsersBornAfter(LocalDate date) {
-        return userRepository.findByBirthdateAfter(date);
+    public KeysetPage<User> getUsersBornAfter(LocalDate date, @Nullable String cursor, int limit) {
+        KeysetPage.checkLimit(limit);
+
+        LocalDate afterBirthdate = date;
+        long afterId = Long.MAX_VALUE;
+        if (cursor != null) {
+            KeysetCursor keysetCursor = KeysetCursor.decode(cursor, 2);
+            afterBirthdate = keysetCursor.getLocalDate(0);
+            afterId = keysetCursor.getLong(1);
+        }
+
+        List<User> users = userRepository.findBornAfter(date, afterBirthdate, afterId, Limit.of(limit + 1));
+        return KeysetPage.of(users, limit, last -> KeysetCursor.encode(last.getBirthdate(), last.getId()));
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,61 @@
+package pl.wsb.fitnesstracker;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bulk fixtures for the {@link Benchmark} tests. Rows are written with plain JDBC batches, so that seeding a million
+ * users does not dominate the benchmark run, and are recognisable by the {@value #EMAIL_DOMAIN} email domain.
+ */
+public final class BenchmarkData {
+
+    public static final String EMAIL_DOMAIN = "benchmark.local";
+
+    private static final int BATCH_SIZE = 10_000;
+
+    private BenchmarkData() {
+    }
+
+    public static String email(int index) {
+        return "user-%d@%s".formatted(index, EMAIL_DOMAIN);
+    }
+
+    /**
+     * Inserts benchmark users with indexes in range {@code [from, to)}.
+     */
+    public static void insertUsers(JdbcTemplate jdbcTemplate, int from, int to) {
+        List<Object[]> batch = new ArrayList<>(BATCH_SIZE);
+        for (int i = from; i < to; i++) {
+            batch.add(new Object[]{"First" + i, "Last" + i, Date.valueOf(LocalDate.of(1950, 1, 1).plusDays(i % 25_000)), email(i)});
+            if (batch.size() == BATCH_SIZE || i == to - 1) {
+                jdbcTemplate.batchUpdate("insert into users (id, first_name, last_name, birthdate, email) values (next value for users_seq, ?, ?, ?, ?)", batch);
+                batch.clear();
+            }
+        }
+    }
+
+    public static void deleteUsers(JdbcTemplate jdbcTemplate) {
+        for (String table : List.of("trainings", "monthly_activity_summaries", "statistics", "user_email_trigrams")) {
+            jdbcTemplate.update("delete from " + table + " where user_id in (select id from users where email like ?)", "%@" + EMAIL_DOMAIN);
+        }
+        jdbcTemplate.update("delete from users where email like ?", "%@" + EMAIL_DOMAIN);
+    }
+
+    public static List<Long> userIds(JdbcTemplate jdbcTemplate) {
+        return jdbcTemplate.queryForList("select id from users where email like ? order by id", Long.class, "%@" + EMAIL_DOMAIN);
+    }
+
+    public static int[] sizes(String property, String defaultSizes) {
+        String[] values = System.getProperty(property, defaultSizes).split(",");
+        int[] sizes = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            sizes[i] = Integer.parseInt(values[i].trim());
+        }
+        return sizes;
+    }
+
+}
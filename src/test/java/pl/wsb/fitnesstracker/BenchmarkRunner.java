@@ -0,0 +1,62 @@
+package pl.wsb.fitnesstracker;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.logging.Logger;
+
+/**
+ * Minimal measurement harness for the {@link Benchmark} tests: runs an operation after a warm-up phase and reports
+ * latency percentiles together with the number of bytes allocated by the measuring thread per operation.
+ */
+public final class BenchmarkRunner {
+
+    private static final Logger log = Logger.getLogger(BenchmarkRunner.class.getName());
+
+    private static final com.sun.management.ThreadMXBean threadMXBean =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private BenchmarkRunner() {
+    }
+
+    public static Result measure(String name, int warmupIterations, int iterations, Runnable operation) {
+        for (int i = 0; i < warmupIterations; i++) {
+            operation.run();
+        }
+
+        long threadId = Thread.currentThread().getId();
+        long[] durations = new long[iterations];
+        long allocatedBefore = threadMXBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            operation.run();
+            durations[i] = System.nanoTime() - start;
+        }
+        long allocated = threadMXBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        Arrays.sort(durations);
+        Result result = new Result(name,
+                                   iterations,
+                                   Arrays.stream(durations).average().orElse(0) / 1_000,
+                                   percentile(durations, 0.50) / 1_000.0,
+                                   percentile(durations, 0.99) / 1_000.0,
+                                   allocated / iterations);
+        log.info(result.toString());
+        return result;
+    }
+
+    private static long percentile(long[] sortedDurations, double percentile) {
+        int index = (int) Math.ceil(percentile * sortedDurations.length) - 1;
+        return sortedDurations[Math.max(index, 0)];
+    }
+
+    public record Result(String name, int iterations, double meanMicros, double p50Micros, double p99Micros,
+                         long allocatedBytesPerOperation) {
+
+        @Override
+        public String toString() {
+            return "%s: iterations=%d mean=%.1fus p50=%.1fus p99=%.1fus alloc=%dB/op"
+                    .formatted(name, iterations, meanMicros, p50Micros, p99Micros, allocatedBytesPerOperation);
+        }
+    }
+
+}
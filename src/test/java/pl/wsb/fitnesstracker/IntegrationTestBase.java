@@ -9,6 +9,7 @@ import org.junit.jupiter.api.AfterEach;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
 import org.springframework.data.jpa.repository.JpaRepository;
 
 import java.util.List;
@@ -27,11 +28,15 @@ public abstract class IntegrationTestBase {
     @Autowired
     private JpaRepository<Statistics, Long> statisticsRepository;
 
+    @Autowired
+    private CacheManager cacheManager;
+
     @AfterEach
     void cleanUpDB() {
         statisticsRepository.deleteAll();
         trainingRepository.deleteAll();
         userRepository.deleteAll();
+        cacheManager.getCacheNames().forEach(name -> cacheManager.getCache(name).clear());
     }
 
     @Before
@@ -0,0 +1,43 @@
+package pl.wsb.fitnesstracker;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Records the SQL statements Hibernate prepares on the current thread while {@link #record(Runnable)} runs, so that
+ * tests can check the query plans of generated queries. Registered in the test {@code application.yml}.
+ */
+public class SqlRecorder implements StatementInspector {
+
+    private static final ThreadLocal<List<String>> statements = new ThreadLocal<>();
+
+    public static List<String> record(Operation operation) throws Exception {
+        List<String> recorded = new ArrayList<>();
+        statements.set(recorded);
+        try {
+            operation.run();
+        } finally {
+            statements.remove();
+        }
+        return recorded;
+    }
+
+    @FunctionalInterface
+    public interface Operation {
+
+        void run() throws Exception;
+
+    }
+
+    @Override
+    public String inspect(String sql) {
+        List<String> recorded = statements.get();
+        if (recorded != null) {
+            recorded.add(sql);
+        }
+        return sql;
+    }
+
+}
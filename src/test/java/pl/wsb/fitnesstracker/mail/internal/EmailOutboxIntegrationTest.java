@@ -0,0 +1,171 @@
+package pl.wsb.fitnesstracker.mail.internal;
+
+import pl.wsb.fitnesstracker.IntegrationTest;
+import pl.wsb.fitnesstracker.mail.api.EmailDto;
+import pl.wsb.fitnesstracker.mail.api.EmailProvider;
+import pl.wsb.fitnesstracker.mail.api.EmailSender;
+import pl.wsb.fitnesstracker.mail.internal.OutboxEmail.Status;
+import pl.wsb.fitnesstracker.training.api.MonthlyTrainingSummary;
+import pl.wsb.fitnesstracker.training.api.MonthlyTrainingSummary.ActivitySummary;
+import pl.wsb.fitnesstracker.training.internal.ActivityType;
+
+import com.icegreen.greenmail.junit5.GreenMailExtension;
+import com.icegreen.greenmail.util.GreenMailUtil;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import javax.mail.internet.MimeMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@IntegrationTest
+@SpringBootTest(properties = {"spring.mail.host=localhost", "spring.mail.port=3025", "mail.outbox.batch-size=2",
+        "mail.outbox.max-attempts=2", "mail.outbox.initial-backoff=1m"})
+class EmailOutboxIntegrationTest {
+
+    @RegisterExtension
+    static GreenMailExtension greenMail = new GreenMailExtension(ServerSetupTest.SMTP);
+
+    @Autowired
+    private EmailSender emailSender;
+
+    @Autowired
+    private EmailProvider emailProvider;
+
+    @Autowired
+    private EmailOutboxDispatcher emailOutboxDispatcher;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    void cleanUp() {
+        jdbcTemplate.update("delete from email_outbox");
+    }
+
+    @Test
+    void shouldDeliverQueuedEmailsInBatches_afterCommit() throws Exception {
+        transactionTemplate.executeWithoutResult(status -> {
+            emailSender.send(new EmailDto("first@example.com", "First", "content 1"));
+            emailSender.send(new EmailDto("second@example.com", "Second", "content 2"));
+            emailSender.send(new EmailDto("third@example.com", "Third", "content 3"));
+        });
+        transactionTemplate.executeWithoutResult(status -> {
+            emailSender.send(new EmailDto("rolled-back@example.com", "Rolled back", "content"));
+            status.setRollbackOnly();
+        });
+        assertThat(greenMail.getReceivedMessages()).isEmpty();
+
+        emailOutboxDispatcher.poll();
+        assertThat(emailOutboxDispatcher.dispatch()).isEqualTo(new EmailOutboxDispatcher.Batch(0, 0));
+
+        MimeMessage[] received = greenMail.getReceivedMessages();
+        assertThat(received).hasSize(3);
+        assertThat(received[0].getSubject()).isEqualTo("First");
+        assertThat(received[2].getAllRecipients()[0].toString()).isEqualTo("third@example.com");
+        assertThat(jdbcTemplate.queryForList("select status from email_outbox", Integer.class))
+                .containsOnly(Status.SENT.ordinal()).hasSize(3);
+    }
+
+    @Test
+    void shouldDeliverReportAsPlainTextAndHtml() throws Exception {
+        MonthlyTrainingSummary summary = new MonthlyTrainingSummary(YearMonth.of(2024, 1), List.of(
+                new ActivitySummary(ActivityType.RUNNING, 2, 10.5, 5400, 7.25, 8.2),
+                new ActivitySummary(ActivityType.CYCLING, 1, 30.1, 3605, 30.1, 25.0)));
+
+        EmailDto report = emailProvider.sendMail("<jane>@example.com", "MONTHLY REPORT", summary);
+
+        assertThat(report.content()).isEqualTo("""
+                MONTHLY REPORT
+                For: <jane>@example.com
+                Month: 2024-01
+                Amount of trainings: 3
+                Total distance: 40.6
+                Total duration: 2:30:05
+                Longest distance: 30.1
+                Highest average speed: 25.0
+                TRAINING REPORT
+                Activity type: RUNNING
+                Trainings: 2
+                Distance: 10.5
+                Duration: 1:30:00
+                Longest distance: 7.25
+                Highest average speed: 8.2
+                Activity type: CYCLING
+                Trainings: 1
+                Distance: 30.1
+                Duration: 1:00:05
+                Longest distance: 30.1
+                Highest average speed: 25.0
+                END OF REPORT
+                """);
+        assertThat(report.htmlContent()).contains("For: &lt;jane&gt;@example.com")
+                .contains("<tr><td>RUNNING</td><td>2</td><td>10.5</td><td>1:30:00</td><td>7.25</td><td>8.2</td></tr>");
+
+        emailSender.send(new EmailDto("someone@example.com", report.subject(), report.content(), report.htmlContent()));
+        emailOutboxDispatcher.dispatch();
+
+        MimeMessage[] received = greenMail.getReceivedMessages();
+        assertThat(received).hasSize(1);
+        assertThat(GreenMailUtil.getBody(received[0])).contains("text/plain").contains("text/html")
+                .contains("Activity type: RUNNING").contains("<td>CYCLING</td>");
+    }
+
+    @Test
+    void shouldRetryWithBackoff_andMarkDead_whenMailServerIsDown() {
+        greenMail.stop();
+        emailSender.send(new EmailDto("someone@example.com", "Report", "content"));
+
+        assertThat(emailOutboxDispatcher.dispatch()).isEqualTo(new EmailOutboxDispatcher.Batch(1, 0));
+        Map<String, Object> email = jdbcTemplate.queryForMap("select * from email_outbox");
+        assertThat(email.get("status")).isEqualTo(Status.PENDING.ordinal());
+        assertThat(email.get("attempts")).isEqualTo(1);
+        assertThat(email.get("last_error")).isNotNull();
+        assertThat(((Timestamp) email.get("next_attempt_at")).toLocalDateTime())
+                .isAfter(LocalDateTime.now().plusSeconds(50));
+        assertThat(emailOutboxDispatcher.dispatch().claimed()).isZero();
+
+        jdbcTemplate.update("update email_outbox set next_attempt_at = ?", LocalDateTime.now().minusSeconds(1));
+        assertThat(emailOutboxDispatcher.dispatch()).isEqualTo(new EmailOutboxDispatcher.Batch(1, 0));
+        assertThat(jdbcTemplate.queryForMap("select status, attempts from email_outbox"))
+                .containsEntry("status", Status.DEAD.ordinal()).containsEntry("attempts", 2);
+    }
+
+    @Test
+    void shouldPurgeOnlyEmailsSentBeforeRetention() {
+        emailSender.send(new EmailDto("old@example.com", "Old", "content"));
+        emailSender.send(new EmailDto("recent@example.com", "Recent", "content"));
+        emailOutboxDispatcher.dispatch();
+        emailSender.send(new EmailDto("pending@example.com", "Pending", "content"));
+        jdbcTemplate.update("update email_outbox set sent_at = ? where to_address = 'old@example.com'",
+                LocalDateTime.now().minusDays(8));
+
+        emailOutboxDispatcher.purge();
+
+        assertThat(jdbcTemplate.queryForList("select to_address from email_outbox", String.class))
+                .containsExactlyInAnyOrder("recent@example.com", "pending@example.com");
+    }
+
+    @Test
+    void shouldDoubleBackoff_upToMaximum() {
+        assertThat(emailOutboxDispatcher.backoff(1)).isEqualTo(Duration.ofMinutes(1));
+        assertThat(emailOutboxDispatcher.backoff(3)).isEqualTo(Duration.ofMinutes(4));
+        assertThat(emailOutboxDispatcher.backoff(100)).isEqualTo(Duration.ofHours(1));
+    }
+
+}
@@ -0,0 +1,46 @@
+package pl.wsb.fitnesstracker.mail.internal;
+
+import pl.wsb.fitnesstracker.Benchmark;
+import pl.wsb.fitnesstracker.BenchmarkRunner;
+import pl.wsb.fitnesstracker.mail.api.EmailDto;
+import pl.wsb.fitnesstracker.training.api.MonthlyTrainingSummary;
+import pl.wsb.fitnesstracker.training.api.MonthlyTrainingSummary.ActivitySummary;
+import pl.wsb.fitnesstracker.training.internal.ActivityType;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.YearMonth;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Measures rendering of the monthly report in both variants, in time and bytes allocated per report, for users with
+ * a growing number of activities.
+ */
+@Benchmark
+class EmailReportBenchmark {
+
+    private final EmailService emailService = new EmailService();
+
+    @Test
+    void renderReports() {
+        for (int activities = 1; activities <= ActivityType.values().length; activities += 2) {
+            List<ActivitySummary> summaries = Arrays.stream(ActivityType.values()).limit(activities)
+                    .map(activityType -> new ActivitySummary(activityType, 12, 123.45, 43_210, 21.5, 11.75))
+                    .toList();
+            MonthlyTrainingSummary summary = new MonthlyTrainingSummary(YearMonth.of(2024, 1), summaries);
+            EmailDto report = emailService.sendMail("jane.doe@example.com", "MONTHLY REPORT", summary);
+            long reportBytes = report.content().length() + report.htmlContent().length();
+
+            BenchmarkRunner.Result result = BenchmarkRunner.measure("report of %d activities".formatted(activities),
+                    100_000, 100_000,
+                    () -> assertThat(emailService.sendMail("jane.doe@example.com", "MONTHLY REPORT", summary).content()).isNotEmpty());
+
+            // besides the two resulting texts, rendering allocates next to nothing
+            assertThat(result.allocatedBytesPerOperation()).isLessThan(reportBytes + 1024);
+        }
+    }
+
+}
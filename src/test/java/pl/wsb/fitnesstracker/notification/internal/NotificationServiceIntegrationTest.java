@@ -0,0 +1,191 @@
+package pl.wsb.fitnesstracker.notification.internal;
+
+import pl.wsb.fitnesstracker.IntegrationTest;
+import pl.wsb.fitnesstracker.IntegrationTestBase;
+import pl.wsb.fitnesstracker.mail.api.EmailDto;
+import pl.wsb.fitnesstracker.mail.api.EmailSender;
+import pl.wsb.fitnesstracker.training.api.TrainingService;
+import pl.wsb.fitnesstracker.training.internal.ActivityType;
+import pl.wsb.fitnesstracker.training.internal.TrainingUpdateDto;
+import pl.wsb.fitnesstracker.user.api.User;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.time.LocalDate.now;
+import static java.util.UUID.randomUUID;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.verify;
+
+@IntegrationTest
+@Transactional
+@TestPropertySource(properties = {"notification.report.concurrency=2", "notification.report.queue-capacity=1",
+                                  "notification.report.partitions=3"})
+class NotificationServiceIntegrationTest extends IntegrationTestBase {
+
+    private static final LocalDateTime FROM = LocalDateTime.of(2023, 7, 1, 0, 0);
+
+    @MockBean
+    private EmailSender emailSender;
+
+    @Autowired
+    private NotificationService notificationService;
+
+    @Autowired
+    private TrainingService trainingService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private JobPartitionRepository jobPartitionRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    void cleanUpPartitions() {
+        // the leases are committed in their own transactions, so they are not rolled back with the test
+        inNewTransaction("delete from job_partitions");
+    }
+
+    @Test
+    void shouldSendReportsConcurrently_withinConfiguredLimit() {
+        List<String> emails = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            User user = existingUser(generateClient());
+            trainingService.createTraining(new TrainingUpdateDto(user.getId(), FROM.plusDays(i), FROM.plusDays(i).plusHours(1),
+                    ActivityType.RUNNING.name(), 5, 5, null));
+            emails.add(user.getEmail());
+        }
+        entityManager.flush();
+
+        Set<String> recipients = ConcurrentHashMap.newKeySet();
+        AtomicInteger sending = new AtomicInteger();
+        AtomicInteger maxSending = new AtomicInteger();
+        doAnswer(invocation -> {
+            maxSending.accumulateAndGet(sending.incrementAndGet(), Math::max);
+            Thread.sleep(50);
+            sending.decrementAndGet();
+            EmailDto email = invocation.getArgument(0);
+            if (email.toAddress().equals(emails.get(0))) {
+                throw new IllegalStateException("Mail server unavailable");
+            }
+            recipients.add(email.toAddress());
+            return null;
+        }).when(emailSender).send(any());
+        double sentBefore = meterRegistry.counter("notification.report.sent").count();
+        double failedBefore = meterRegistry.counter("notification.report.failed").count();
+
+        assertThat(notificationService.sendReports(YearMonth.from(FROM))).isEqualTo(3);
+
+        assertThat(recipients).containsExactlyInAnyOrderElementsOf(emails.subList(1, emails.size()));
+        assertThat(maxSending.get()).isBetween(1, 2);
+        assertThat(meterRegistry.counter("notification.report.sent").count() - sentBefore).isEqualTo(5);
+        assertThat(meterRegistry.counter("notification.report.failed").count() - failedBefore).isEqualTo(1);
+        assertThat(meterRegistry.timer("notification.report.enqueue").count()).isGreaterThanOrEqualTo(5);
+    }
+
+    @Test
+    void shouldNotSendReportsAgain_whenAnotherNodeRunsTheJobAfterwards() {
+        User user = existingUser(generateClient());
+        trainingService.createTraining(new TrainingUpdateDto(user.getId(), FROM, FROM.plusHours(1),
+                ActivityType.RUNNING.name(), 5, 5, null));
+        entityManager.flush();
+        notificationService.sendReports(YearMonth.from(FROM));
+        reset(emailSender);
+
+        assertThat(notificationService.sendReports(YearMonth.from(FROM))).isZero();
+
+        verify(emailSender, never()).send(any());
+    }
+
+    @Test
+    void shouldSendMissedReports_onlyWithinCatchUpWindowAfterScheduledTime() {
+        User user = existingUser(generateClient());
+        LocalDateTime start = LocalDateTime.of(2024, 2, 10, 8, 0);
+        trainingService.createTraining(new TrainingUpdateDto(user.getId(), start, start.plusHours(1),
+                ActivityType.RUNNING.name(), 5, 5, null));
+        entityManager.flush();
+
+        notificationService.reclaimPartitions(LocalDateTime.of(2024, 3, 18, 10, 0));
+        verify(emailSender, never()).send(any());
+
+        notificationService.reclaimPartitions(LocalDateTime.of(2024, 3, 1, 9, 0));
+        verify(emailSender).send(argThat(email -> email.toAddress().equals(user.getEmail())));
+        assertThat(NotificationService.lastScheduledTime(LocalDateTime.of(2024, 3, 1, 7, 59)))
+                .isEqualTo(LocalDateTime.of(2024, 2, 1, 8, 0));
+        assertThat(NotificationService.lastScheduledTime(LocalDateTime.of(2024, 3, 1, 8, 0)))
+                .isEqualTo(LocalDateTime.of(2024, 3, 1, 8, 0));
+    }
+
+    @Test
+    void shouldShareDisjointPartitions_andTakeOverExpiredLeases() {
+        JobPartitionLeases nodeA = new JobPartitionLeases(jobPartitionRepository, transactionManager, "node-a", Duration.ofMinutes(5));
+        JobPartitionLeases nodeB = new JobPartitionLeases(jobPartitionRepository, transactionManager, "node-b", Duration.ofMinutes(5));
+        nodeA.createPartitions("test-job", "run-1", 3);
+        nodeB.createPartitions("test-job", "run-1", 3);
+
+        JobPartitionLeases.Lease first = nodeA.claim("test-job", "run-1").orElseThrow();
+        JobPartitionLeases.Lease second = nodeB.claim("test-job", "run-1").orElseThrow();
+        JobPartitionLeases.Lease third = nodeA.claim("test-job", "run-1").orElseThrow();
+
+        assertThat(List.of(first.partition(), second.partition(), third.partition())).containsExactly(0, 1, 2);
+        assertThat(first.partitionCount()).isEqualTo(3);
+        assertThat(nodeB.claim("test-job", "run-1")).isEmpty();
+        assertThat(nodeA.complete(first)).isTrue();
+        assertThat(nodeA.findRunsWithAvailablePartitions("test-job")).isEmpty();
+
+        // node B stops renewing its lease
+        inNewTransaction("update job_partitions set lease_until = timestamp '2000-01-01 00:00:00' where owner = 'node-b'");
+        assertThat(nodeA.findRunsWithAvailablePartitions("test-job")).containsExactly("run-1");
+        JobPartitionLeases.Lease takenOver = nodeA.claim("test-job", "run-1").orElseThrow();
+
+        assertThat(takenOver.partition()).isEqualTo(second.partition());
+        assertThat(nodeB.complete(second)).isFalse();
+        assertThat(nodeA.complete(takenOver)).isTrue();
+        assertThat(nodeA.complete(third)).isTrue();
+        assertThat(nodeB.claim("test-job", "run-1")).isEmpty();
+    }
+
+    private void inNewTransaction(String sql) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        transactionTemplate.executeWithoutResult(status -> jdbcTemplate.update(sql));
+    }
+
+    private static User generateClient() {
+        return new User(randomUUID().toString(), randomUUID().toString(), now(), randomUUID().toString());
+    }
+
+}
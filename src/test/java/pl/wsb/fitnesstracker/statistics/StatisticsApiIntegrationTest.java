@@ -2,17 +2,30 @@ package pl.wsb.fitnesstracker.statistics;
 
 import pl.wsb.fitnesstracker.IntegrationTest;
 import pl.wsb.fitnesstracker.IntegrationTestBase;
+import pl.wsb.fitnesstracker.SqlRecorder;
 import pl.wsb.fitnesstracker.statistics.api.Statistics;
+import pl.wsb.fitnesstracker.statistics.api.StatisticsProvider;
+import pl.wsb.fitnesstracker.statistics.api.StatisticsService;
+import pl.wsb.fitnesstracker.pagination.api.KeysetPage;
+import pl.wsb.fitnesstracker.training.internal.ActivityType;
+import pl.wsb.fitnesstracker.training.api.Training;
 import pl.wsb.fitnesstracker.user.api.User;
 
+import com.jayway.jsonpath.JsonPath;
+import jakarta.persistence.EntityManager;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.transaction.annotation.Transactional;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.hamcrest.Matchers.hasSize;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 import static java.time.LocalDate.now;
@@ -22,6 +35,7 @@ import static org.springframework.test.web.servlet.request.MockMvcRequestBuilder
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.log;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
@@ -33,6 +47,18 @@ public class StatisticsApiIntegrationTest extends IntegrationTestBase {
     @Autowired
     private MockMvc mockMvc;
 
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private StatisticsService statisticsService;
+
+    @Autowired
+    private StatisticsProvider statisticsProvider;
+
     @Test
     void shouldReturnAllStatistics_whenGettingAllStatistics() throws Exception {
         User user1 = existingUser(generateClient());
@@ -74,6 +100,36 @@ public class StatisticsApiIntegrationTest extends IntegrationTestBase {
                 .andExpect(jsonPath("$[1]").doesNotExist());
     }
 
+    @Test
+    void shouldLoadStatisticsWithUserByIndexedLookup_whenGettingByUserId() throws Exception {
+        User user1 = existingUser(generateClient());
+        Statistics stats1 = persistStatistic(generateStatistics(user1));
+        persistStatistic(generateStatistics(existingUser(generateClient())));
+        entityManager.flush();
+        entityManager.clear();
+
+        List<String> statements = SqlRecorder.record(() -> mockMvc.perform(get("/v1/statistics/{userId}", user1.getId()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].id").value(stats1.getId()))
+                .andExpect(jsonPath("$[0].user.email").value(user1.getEmail()))
+                .andExpect(jsonPath("$[1]").doesNotExist()));
+
+        assertThat(statements).hasSize(1);
+        String plan = jdbcTemplate.query(connection -> connection.prepareStatement("explain " + statements.get(0)),
+                (ResultSetExtractor<String>) resultSet -> resultSet.next() ? resultSet.getString(1) : null);
+        assertThat(plan).contains("UK_STATISTICS_USER_ID");
+    }
+
+    @Test
+    void shouldRejectSecondStatistics_whenCreatingStatisticsForSameUser() {
+        User user1 = existingUser(generateClient());
+        persistStatistic(generateStatistics(user1));
+
+        assertThatThrownBy(() -> statisticsService.createStatistics(generateStatistics(user1)))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("already exist");
+    }
+
     @Test
     void shouldReturnDetailsAboutStatistics_whenGettingAboveBurnedCalories() throws Exception {
         User user1 = existingUser(generateClient());
@@ -94,6 +150,42 @@ public class StatisticsApiIntegrationTest extends IntegrationTestBase {
                 .andExpect(jsonPath("$[1]").doesNotExist());
     }
 
+    @Test
+    void shouldReturnTopBurnersPageByPage_whenGettingAboveBurnedCaloriesWithLimit() throws Exception {
+        persistStatistic(new Statistics(existingUser(generateClient()), 1, 1, 500));
+        Statistics stats2 = persistStatistic(new Statistics(existingUser(generateClient()), 1, 1, 2000));
+        Statistics stats3 = persistStatistic(new Statistics(existingUser(generateClient()), 1, 1, 3000));
+        Statistics stats4 = persistStatistic(new Statistics(existingUser(generateClient()), 1, 1, 2000));
+        entityManager.flush();
+        entityManager.clear();
+
+        String cursor = mockMvc.perform(get("/v1/statistics/moreCaloriesBurned")
+                        .param("burnedCalories", "1000")
+                        .param("limit", "2"))
+                .andDo(log())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].id").value(stats3.getId()))
+                .andExpect(jsonPath("$[1].id").value(stats4.getId()))
+                .andExpect(jsonPath("$[1].user.email").isNotEmpty())
+                .andReturn().getResponse().getHeader(KeysetPage.NEXT_CURSOR_HEADER);
+
+        mockMvc.perform(get("/v1/statistics/moreCaloriesBurned")
+                        .param("burnedCalories", "1000")
+                        .param("limit", "2")
+                        .param("cursor", cursor))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].id").value(stats2.getId()))
+                .andExpect(header().doesNotExist(KeysetPage.NEXT_CURSOR_HEADER));
+
+        List<String> statements = SqlRecorder.record(() -> statisticsProvider.getMoreCaloriesBurned(1000L, cursor, 2));
+        assertThat(statements).hasSize(1);
+        String plan = jdbcTemplate.query(connection -> connection.prepareStatement("explain " + statements.get(0)),
+                (ResultSetExtractor<String>) resultSet -> resultSet.next() ? resultSet.getString(1) : null);
+        assertThat(plan).contains("IDX_STATISTICS_TOTAL_CALORIES_BURNED").contains("index sorted");
+    }
+
     @Test
     void shouldPersistStatistics_whenCreatingNewStatistics() throws Exception {
         User user1 = existingUser(generateClient());
@@ -170,6 +262,89 @@ public class StatisticsApiIntegrationTest extends IntegrationTestBase {
         assertThat(allStatistics).isEmpty();
     }
 
+    @Test
+    void shouldApplyTrainingDeltasToStatistics_whenCreatingAndUpdatingTrainings() throws Exception {
+        User user1 = existingUser(generateClient());
+        User user2 = existingUser(generateClient());
+        persistStatistic(generateStatistics(user2));
+        String training = """
+                {"userId": %d, "startTime": "2024-04-01T10:00:00", "endTime": "2024-04-01T11:00:00", "activityType": "RUNNING", "distance": %s, "averageSpeed": 10.0}""";
+
+        String created = mockMvc.perform(post("/v1/trainings").contentType(MediaType.APPLICATION_JSON)
+                        .content(training.formatted(user1.getId(), "10.5")))
+                .andExpect(status().isCreated())
+                .andReturn().getResponse().getContentAsString();
+        mockMvc.perform(post("/v1/trainings/batch").contentType(MediaType.APPLICATION_JSON)
+                        .content("[" + training.formatted(user1.getId(), "4.5") + "," + training.formatted(user2.getId(), "2.0") + "]"))
+                .andExpect(status().isOk());
+        mockMvc.perform(put("/v1/trainings/{id}", JsonPath.<Integer>read(created, "$.id"))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(training.formatted(user2.getId(), "12.0")))
+                .andExpect(status().isOk());
+        entityManager.clear();
+
+        mockMvc.perform(get("/v1/statistics/{userId}", user1.getId()))
+                .andDo(log())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].totalTrainings").value(1))
+                .andExpect(jsonPath("$[0].totalDistance").value(4.5));
+        mockMvc.perform(get("/v1/statistics/{userId}", user2.getId()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].totalTrainings").value(44))
+                .andExpect(jsonPath("$[0].totalDistance").value(72.0))
+                .andExpect(jsonPath("$[0].totalCaloriesBurned").value(111));
+    }
+
+    @Test
+    void shouldNotCreateNegativeStatistics_whenUpdatingTrainingOfUserWithoutStatistics() throws Exception {
+        User user1 = existingUser(generateClient());
+        User user2 = existingUser(generateClient());
+        // stored without events, like the initial data, so it is not counted in any statistics
+        Training training = persistTraining(new Training(user1, LocalDateTime.of(2024, 4, 1, 10, 0),
+                LocalDateTime.of(2024, 4, 1, 11, 0), ActivityType.RUNNING, 10.5, 10.0));
+
+        mockMvc.perform(put("/v1/trainings/{id}", training.getId())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("""
+                                {"userId": %d, "startTime": "2024-04-01T10:00:00", "endTime": "2024-04-01T11:00:00", "activityType": "RUNNING", "distance": 7.0, "averageSpeed": 7.0}"""
+                                .formatted(user2.getId())))
+                .andExpect(status().isOk());
+        entityManager.clear();
+
+        mockMvc.perform(get("/v1/statistics/{userId}", user1.getId()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(0)));
+        mockMvc.perform(get("/v1/statistics/{userId}", user2.getId()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].totalTrainings").value(1))
+                .andExpect(jsonPath("$[0].totalDistance").value(7.0));
+        assertThat(jdbcTemplate.queryForObject("select count(*) from statistics where total_trainings < 0 or total_distance < 0",
+                Integer.class)).isZero();
+    }
+
+    @Test
+    void shouldApplyExactDelta_whenUpdatingTrainingNotCountedInSeededStatistics() throws Exception {
+        User user1 = existingUser(generateClient());
+        User user2 = existingUser(generateClient());
+        persistStatistic(new Statistics(user1, 0, 3.0, 0));
+        // stored without events, so the statistics seeded by hand do not count it
+        Training training = persistTraining(new Training(user1, LocalDateTime.of(2024, 4, 1, 10, 0),
+                LocalDateTime.of(2024, 4, 1, 11, 0), ActivityType.RUNNING, 10.5, 10.0));
+
+        mockMvc.perform(put("/v1/trainings/{id}", training.getId())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("""
+                                {"userId": %d, "startTime": "2024-04-01T10:00:00", "endTime": "2024-04-01T11:00:00", "activityType": "RUNNING", "distance": 7.0, "averageSpeed": 7.0}"""
+                                .formatted(user2.getId())))
+                .andExpect(status().isOk());
+        entityManager.clear();
+
+        mockMvc.perform(get("/v1/statistics/{userId}", user1.getId()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].totalTrainings").value(-1))
+                .andExpect(jsonPath("$[0].totalDistance").value(-7.5));
+    }
+
     private static User generateClient() {
         return new User(randomUUID().toString(), randomUUID().toString(), now(), randomUUID().toString());
     }
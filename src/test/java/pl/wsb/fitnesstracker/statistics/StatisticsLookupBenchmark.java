@@ -0,0 +1,72 @@
+package pl.wsb.fitnesstracker.statistics;
+
+import pl.wsb.fitnesstracker.Benchmark;
+import pl.wsb.fitnesstracker.BenchmarkData;
+import pl.wsb.fitnesstracker.BenchmarkRunner;
+import pl.wsb.fitnesstracker.statistics.api.StatisticsProvider;
+import pl.wsb.fitnesstracker.statistics.internal.StatisticsRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compares looking up the statistics of one user by scanning all statistics, as {@link StatisticsProvider#getStatisticsForUser}
+ * used to, with the indexed lookup by {@code user_id}. Table size can be overridden with {@code -Dbenchmark.users=...}.
+ */
+@Benchmark
+@SpringBootTest
+class StatisticsLookupBenchmark {
+
+    @Autowired
+    private StatisticsProvider statisticsProvider;
+
+    @Autowired
+    private StatisticsRepository statisticsRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    void cleanUp() {
+        BenchmarkData.deleteUsers(jdbcTemplate);
+    }
+
+    @Test
+    void indexedLookupShouldBeFasterThanScan() {
+        for (int size : BenchmarkData.sizes("benchmark.users", "100000")) {
+            BenchmarkData.insertUsers(jdbcTemplate, 0, size);
+            jdbcTemplate.update("""
+                    insert into statistics (user_id, total_trainings, total_distance, total_calories_burned)
+                    select id, 10, 42.5, 1000 from users where email like ?""", "%@" + BenchmarkData.EMAIL_DOMAIN);
+            List<Long> userIds = BenchmarkData.userIds(jdbcTemplate);
+
+            BenchmarkRunner.Result scan = BenchmarkRunner.measure("scan @" + size, 1, 5,
+                    () -> {
+                        Long userId = randomUserId(userIds);
+                        assertThat(statisticsRepository.findAll().stream()
+                                .filter(statistics -> Objects.equals(statistics.getUser().getId(), userId))
+                                .findFirst()).isPresent();
+                    });
+            BenchmarkRunner.Result lookup = BenchmarkRunner.measure("indexed lookup @" + size, 500, 5_000,
+                    () -> assertThat(statisticsProvider.getStatisticsForUser(randomUserId(userIds))).isPresent());
+
+            assertThat(lookup.p99Micros()).isLessThan(scan.p50Micros());
+            assertThat(lookup.allocatedBytesPerOperation()).isLessThan(scan.allocatedBytesPerOperation());
+
+            BenchmarkData.deleteUsers(jdbcTemplate);
+        }
+    }
+
+    private static Long randomUserId(List<Long> userIds) {
+        return userIds.get(ThreadLocalRandom.current().nextInt(userIds.size()));
+    }
+
+}
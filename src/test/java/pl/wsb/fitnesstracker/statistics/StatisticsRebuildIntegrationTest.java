@@ -0,0 +1,98 @@
+package pl.wsb.fitnesstracker.statistics;
+
+import pl.wsb.fitnesstracker.BenchmarkData;
+import pl.wsb.fitnesstracker.IntegrationTest;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.awaitility.Awaitility.await;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.log;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * The rebuild runs on its own threads and transactions, so unlike the other integration tests this one commits its
+ * data and removes it afterwards.
+ */
+@IntegrationTest
+@SpringBootTest
+@AutoConfigureMockMvc(addFilters = false)
+class StatisticsRebuildIntegrationTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    void cleanUp() {
+        BenchmarkData.deleteUsers(jdbcTemplate);
+        jdbcTemplate.update("delete from statistics");
+    }
+
+    @Test
+    void shouldRecomputeAllStatisticsFromTrainings_whenRebuildingStatistics() throws Exception {
+        BenchmarkData.insertUsers(jdbcTemplate, 0, 3);
+        List<Long> userIds = BenchmarkData.userIds(jdbcTemplate);
+        insertTraining(userIds.get(0), 10.5);
+        insertTraining(userIds.get(0), 4.5);
+        insertTraining(userIds.get(1), 3.0);
+        insertStatistics(userIds.get(1), 7, 99.0, 500);
+        insertStatistics(userIds.get(2), 2, 20.0, 100);
+
+        mockMvc.perform(post("/v1/statistics/rebuild").param("parallelism", "2"))
+                .andDo(log())
+                .andExpect(status().isAccepted())
+                .andExpect(jsonPath("$.parallelism").value(2));
+        await().atMost(Duration.ofSeconds(10)).untilAsserted(() -> mockMvc.perform(get("/v1/statistics/rebuild"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.state").value("COMPLETED"))
+                .andExpect(jsonPath("$.finishedAt").isNotEmpty()));
+
+        mockMvc.perform(get("/v1/statistics/{userId}", userIds.get(0)))
+                .andExpect(jsonPath("$[0].totalTrainings").value(2))
+                .andExpect(jsonPath("$[0].totalDistance").value(15.0))
+                .andExpect(jsonPath("$[0].totalCaloriesBurned").value(0));
+        mockMvc.perform(get("/v1/statistics/{userId}", userIds.get(1)))
+                .andExpect(jsonPath("$[0].totalTrainings").value(1))
+                .andExpect(jsonPath("$[0].totalDistance").value(3.0))
+                .andExpect(jsonPath("$[0].totalCaloriesBurned").value(500));
+        mockMvc.perform(get("/v1/statistics/{userId}", userIds.get(2)))
+                .andExpect(jsonPath("$[0].totalTrainings").value(0))
+                .andExpect(jsonPath("$[0].totalDistance").value(0.0))
+                .andExpect(jsonPath("$[0].totalCaloriesBurned").value(100));
+    }
+
+    @Test
+    void shouldRejectRebuild_whenParallelismIsOutOfRange() throws Exception {
+        mockMvc.perform(post("/v1/statistics/rebuild").param("parallelism", "0"))
+                .andExpect(status().isBadRequest());
+    }
+
+    private void insertTraining(Long userId, double distance) {
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 8, 0);
+        jdbcTemplate.update("""
+                insert into trainings (id, user_id, start_time, end_time, activity_type, distance, average_speed)
+                values (next value for trainings_seq, ?, ?, ?, 0, ?, 10)""", userId, start, start.plusHours(1), distance);
+    }
+
+    private void insertStatistics(Long userId, int totalTrainings, double totalDistance, int totalCaloriesBurned) {
+        jdbcTemplate.update("""
+                insert into statistics (user_id, total_trainings, total_distance, total_calories_burned)
+                values (?, ?, ?, ?)""", userId, totalTrainings, totalDistance, totalCaloriesBurned);
+    }
+
+}
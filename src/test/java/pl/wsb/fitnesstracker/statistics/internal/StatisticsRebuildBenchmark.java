@@ -0,0 +1,69 @@
+package pl.wsb.fitnesstracker.statistics.internal;
+
+import pl.wsb.fitnesstracker.Benchmark;
+import pl.wsb.fitnesstracker.BenchmarkData;
+import pl.wsb.fitnesstracker.BenchmarkRunner;
+import pl.wsb.fitnesstracker.statistics.internal.StatisticsRebuildStatus.State;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.Duration;
+import java.util.logging.Logger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+/**
+ * Measures the throughput of the full statistics rebuild in trainings per second, for growing parallelism. The data
+ * set can be overridden with {@code -Dbenchmark.users=...} and {@code -Dbenchmark.trainingsPerUser=...},
+ * the parallelism levels with {@code -Dbenchmark.parallelism=...}.
+ */
+@Benchmark
+@SpringBootTest
+class StatisticsRebuildBenchmark {
+
+    private static final Logger log = Logger.getLogger(StatisticsRebuildBenchmark.class.getName());
+
+    @Autowired
+    private StatisticsRebuildJob statisticsRebuildJob;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    void cleanUp() {
+        BenchmarkData.deleteUsers(jdbcTemplate);
+        jdbcTemplate.update("delete from statistics");
+    }
+
+    @Test
+    void rebuildShouldScaleWithParallelism() {
+        int users = BenchmarkData.sizes("benchmark.users", "100000")[0];
+        int trainingsPerUser = BenchmarkData.sizes("benchmark.trainingsPerUser", "10")[0];
+        BenchmarkData.insertUsers(jdbcTemplate, 0, users);
+        jdbcTemplate.update("""
+                insert into trainings (id, user_id, start_time, end_time, activity_type, distance, average_speed)
+                select next value for trainings_seq, u.id, timestamp '2024-01-01 08:00:00' + r.x * interval '1' day,
+                       timestamp '2024-01-01 09:00:00' + r.x * interval '1' day, mod(r.x, 4), r.x, 10
+                from users u cross join system_range(1, ?) r
+                where u.email like ?""", trainingsPerUser, "%@" + BenchmarkData.EMAIL_DOMAIN);
+        long trainings = (long) users * trainingsPerUser;
+
+        for (int parallelism : BenchmarkData.sizes("benchmark.parallelism", "1,4")) {
+            BenchmarkRunner.Result result = BenchmarkRunner.measure("rebuild x" + parallelism, 1, 3,
+                    () -> assertThat(rebuild(parallelism).state()).isEqualTo(State.COMPLETED));
+            log.info("parallelism %d: %.0f trainings/s".formatted(parallelism, trainings * 1_000_000.0 / result.meanMicros()));
+        }
+    }
+
+    private StatisticsRebuildStatus rebuild(int parallelism) {
+        statisticsRebuildJob.start(parallelism);
+        await().atMost(Duration.ofMinutes(10)).pollInterval(Duration.ofMillis(10))
+                .until(() -> statisticsRebuildJob.getStatus().orElseThrow().finishedAt() != null);
+        return statisticsRebuildJob.getStatus().orElseThrow();
+    }
+
+}
@@ -0,0 +1,78 @@
+package pl.wsb.fitnesstracker.training;
+
+import pl.wsb.fitnesstracker.Benchmark;
+import pl.wsb.fitnesstracker.BenchmarkData;
+import pl.wsb.fitnesstracker.BenchmarkRunner;
+import pl.wsb.fitnesstracker.training.api.TrainingProvider;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compares the data read by the monthly report job: the precomputed monthly summaries, and all trainings of the month
+ * ordered by user, read with plain JDBC as the baseline the summaries replaced. The data set can be overridden with {@code -Dbenchmark.users=...} and
+ * {@code -Dbenchmark.trainingsPerUser=...}.
+ */
+@Benchmark
+@SpringBootTest
+class MonthlyReportReadBenchmark {
+
+    private static final YearMonth MONTH = YearMonth.of(2023, 7);
+
+    @Autowired
+    private TrainingProvider trainingProvider;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    void cleanUp() {
+        BenchmarkData.deleteUsers(jdbcTemplate);
+    }
+
+    @Test
+    void summariesShouldBeReadFasterThanTrainings() {
+        int users = BenchmarkData.sizes("benchmark.users", "20000")[0];
+        int trainingsPerUser = BenchmarkData.sizes("benchmark.trainingsPerUser", "30")[0];
+        BenchmarkData.insertUsers(jdbcTemplate, 0, users);
+        jdbcTemplate.update("""
+                insert into trainings (id, user_id, start_time, end_time, activity_type, distance, average_speed)
+                select next value for trainings_seq, u.id, timestamp '2023-07-01 08:00:00' + mod(r.x, 28) * interval '1' day,
+                       timestamp '2023-07-01 09:00:00' + mod(r.x, 28) * interval '1' day, mod(r.x, 3), r.x, 10
+                from users u cross join system_range(1, ?) r
+                where u.email like ?""", trainingsPerUser, "%@" + BenchmarkData.EMAIL_DOMAIN);
+        jdbcTemplate.update("""
+                insert into monthly_activity_summaries (user_id, month_start, activity_type, trainings, total_distance,
+                                                        total_duration_seconds, longest_distance, highest_average_speed)
+                select t.user_id, date '2023-07-01', t.activity_type, count(*), sum(t.distance),
+                       sum(datediff(second, t.start_time, t.end_time)), max(t.distance), max(t.average_speed)
+                from trainings t join users u on u.id = t.user_id
+                where u.email like ?
+                group by t.user_id, t.activity_type""", "%@" + BenchmarkData.EMAIL_DOMAIN);
+
+        AtomicInteger count = new AtomicInteger();
+        LocalDateTime from = MONTH.atDay(1).atStartOfDay();
+        BenchmarkRunner.Result trainings = BenchmarkRunner.measure("trainings of %d users".formatted(users), 1, 3,
+                () -> jdbcTemplate.query("""
+                        select t.*, u.* from trainings t join users u on u.id = t.user_id
+                        where t.start_time >= ? and t.start_time < ?
+                        order by t.user_id, t.start_time, t.id""",
+                        (RowCallbackHandler) resultSet -> count.incrementAndGet(), from, from.plusMonths(1)));
+        BenchmarkRunner.Result summaries = BenchmarkRunner.measure("summaries of %d users".formatted(users), 1, 3,
+                () -> trainingProvider.forEachUserMonthlySummary(MONTH, (user, summary) -> count.incrementAndGet()));
+
+        assertThat(summaries.meanMicros()).isLessThan(trainings.meanMicros());
+        assertThat(summaries.allocatedBytesPerOperation()).isLessThan(trainings.allocatedBytesPerOperation());
+    }
+
+}
@@ -2,14 +2,32 @@ package pl.wsb.fitnesstracker.training;
 
 import pl.wsb.fitnesstracker.IntegrationTest;
 import pl.wsb.fitnesstracker.IntegrationTestBase;
+import pl.wsb.fitnesstracker.SqlRecorder;
+import pl.wsb.fitnesstracker.pagination.api.KeysetCursor;
+import pl.wsb.fitnesstracker.pagination.api.KeysetPage;
+import pl.wsb.fitnesstracker.training.api.MonthlyTrainingSummary;
+import pl.wsb.fitnesstracker.training.api.MonthlyTrainingSummary.ActivitySummary;
 import pl.wsb.fitnesstracker.training.api.Training;
+import pl.wsb.fitnesstracker.training.api.TrainingProvider;
+import pl.wsb.fitnesstracker.training.api.TrainingSearchCriteria;
+import pl.wsb.fitnesstracker.training.api.TrainingService;
 import pl.wsb.fitnesstracker.training.internal.ActivityType;
+import pl.wsb.fitnesstracker.training.internal.TrainingUpdateDto;
 import pl.wsb.fitnesstracker.user.api.User;
+import pl.wsb.fitnesstracker.user.api.UserProvider;
+import com.jayway.jsonpath.JsonPath;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.text.ParseException;
@@ -18,11 +36,19 @@ import java.text.SimpleDateFormat;
 import static java.time.LocalDate.now;
 import static java.util.UUID.randomUUID;
 import java.time.LocalDateTime;
+import java.time.YearMonth;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.UUID;
 
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.hasSize;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.log;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
@@ -34,6 +60,24 @@ class TrainingApiIntegrationTest extends IntegrationTestBase {
     @Autowired
     private MockMvc mockMvc;
 
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private TrainingProvider trainingProvider;
+
+    @Autowired
+    private TrainingService trainingService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private UserProvider userProvider;
+
     @Test
     void shouldReturnAllTrainings_whenGettingAllTrainings() throws Exception {
 
@@ -149,6 +193,136 @@ class TrainingApiIntegrationTest extends IntegrationTestBase {
 
     }
 
+    @Test
+    void shouldCreateValidTrainingsAndRejectInvalidOnes_whenCreatingTrainingsInBatch() throws Exception {
+        User user1 = existingUser(generateClient());
+        User user2 = existingUser(generateClient());
+        int trainingCount = getAllTrainings().size();
+
+        String requestBody = """
+                [
+                {"userId": %d, "startTime": "2024-04-01T10:00:00", "endTime": "2024-04-01T11:00:00", "activityType": "RUNNING", "distance": 10.5, "averageSpeed": 10.5},
+                {"userId": %d, "startTime": "2024-04-02T10:00:00", "endTime": "2024-04-02T11:00:00", "activityType": "CYCLING", "distance": 30.0, "averageSpeed": 30.0},
+                {"userId": -1, "startTime": "2024-04-03T10:00:00", "endTime": "2024-04-03T11:00:00", "activityType": "RUNNING", "distance": 5.0, "averageSpeed": 5.0},
+                {"userId": %d, "startTime": "2024-04-04T10:00:00", "endTime": "2024-04-04T11:00:00", "activityType": "ROWING", "distance": 5.0, "averageSpeed": 5.0},
+                {"userId": %d, "startTime": "2024-04-05T10:00:00", "endTime": "2024-04-05T11:00:00", "activityType": "WALKING", "distance": 4.0, "averageSpeed": 4.0}
+                ]
+                """.formatted(user1.getId(), user2.getId(), user1.getId(), user1.getId());
+
+        mockMvc.perform(post("/v1/trainings/batch").contentType(MediaType.APPLICATION_JSON).content(requestBody))
+                .andDo(log())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(5)))
+                .andExpect(jsonPath("$[0].trainingId").isNumber())
+                .andExpect(jsonPath("$[1].trainingId").isNumber())
+                .andExpect(jsonPath("$[2].trainingId").doesNotExist())
+                .andExpect(jsonPath("$[2].error").value("User with ID=-1 was not found"))
+                .andExpect(jsonPath("$[3].error").value("Unknown activity type ROWING"))
+                .andExpect(jsonPath("$[4].index").value(4))
+                .andExpect(jsonPath("$[4].trainingId").isNumber());
+
+        assertThat(getAllTrainings()).hasSize(trainingCount + 3);
+        assertThat(getAllTrainings()).filteredOn(training -> training.getUser().getId().equals(user1.getId()))
+                .extracting(Training::getActivityType)
+                .containsExactlyInAnyOrder(ActivityType.RUNNING, ActivityType.WALKING);
+    }
+
+    @Test
+    void shouldNotCreateDuplicate_whenRetryingCreateWithSameSessionId() throws Exception {
+        User user1 = existingUser(generateClient());
+        int trainingCount = getAllTrainings().size();
+
+        String requestBody = """
+                {
+                    "userId": "%s",
+                    "startTime": "2024-04-01T10:00:00",
+                    "endTime": "2024-04-01T11:00:00",
+                    "activityType": "RUNNING",
+                    "distance": 10.52,
+                    "averageSpeed": 8.2,
+                    "sessionId": "%s"
+                }
+                """.formatted(user1.getId(), randomUUID());
+
+        String created = mockMvc.perform(post("/v1/trainings").contentType(MediaType.APPLICATION_JSON).content(requestBody))
+                .andDo(log())
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.user.id").value(user1.getId()))
+                .andExpect(jsonPath("$.distance").value(10.52))
+                .andReturn().getResponse().getContentAsString();
+
+        mockMvc.perform(post("/v1/trainings").contentType(MediaType.APPLICATION_JSON).content(requestBody))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.id").value(JsonPath.<Integer>read(created, "$.id")));
+
+        mockMvc.perform(post("/v1/trainings/batch").contentType(MediaType.APPLICATION_JSON).content("[" + requestBody + "]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].trainingId").value(JsonPath.<Integer>read(created, "$.id")));
+
+        assertThat(getAllTrainings()).hasSize(trainingCount + 1);
+    }
+
+    @Test
+    void shouldInsertOnlyAbsentSessions_whenCreatingTrainingsInBatch() throws Exception {
+        User user1 = existingUser(generateClient());
+        UUID existingSession = randomUUID();
+        UUID newSession = randomUUID();
+        String training = """
+                {"userId": %d, "startTime": "2024-04-01T10:00:00", "endTime": "2024-04-01T11:00:00", "activityType": "RUNNING", "distance": 5.0, "averageSpeed": 5.0, "sessionId": "%s"}""";
+        String created = mockMvc.perform(post("/v1/trainings").contentType(MediaType.APPLICATION_JSON)
+                        .content(training.formatted(user1.getId(), existingSession)))
+                .andExpect(status().isCreated())
+                .andReturn().getResponse().getContentAsString();
+        int trainingCount = getAllTrainings().size();
+
+        String results = mockMvc.perform(post("/v1/trainings/batch").contentType(MediaType.APPLICATION_JSON)
+                        .content("[" + training.formatted(user1.getId(), existingSession) + ","
+                                + training.formatted(user1.getId(), newSession) + ","
+                                + training.formatted(user1.getId(), newSession) + "]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].trainingId").value(JsonPath.<Integer>read(created, "$.id")))
+                .andExpect(jsonPath("$[1].trainingId").isNumber())
+                .andReturn().getResponse().getContentAsString();
+
+        assertThat(JsonPath.<Integer>read(results, "$[2].trainingId")).isEqualTo(JsonPath.<Integer>read(results, "$[1].trainingId"));
+        assertThat(getAllTrainings()).hasSize(trainingCount + 1);
+    }
+
+    @Test
+    void shouldRejectCreate_whenSessionIdBelongsToAnotherUser() throws Exception {
+        User user1 = existingUser(generateClient());
+        User user2 = existingUser(generateClient());
+        UUID sessionId = randomUUID();
+        String requestBody = """
+                {
+                    "userId": "%s",
+                    "startTime": "2024-04-01T10:00:00",
+                    "endTime": "2024-04-01T11:00:00",
+                    "activityType": "RUNNING",
+                    "distance": 10.52,
+                    "averageSpeed": 8.2,
+                    "sessionId": "%s"
+                }
+                """;
+        mockMvc.perform(post("/v1/trainings").contentType(MediaType.APPLICATION_JSON)
+                        .content(requestBody.formatted(user1.getId(), sessionId)))
+                .andExpect(status().isCreated());
+        int trainingCount = getAllTrainings().size();
+
+        mockMvc.perform(post("/v1/trainings").contentType(MediaType.APPLICATION_JSON)
+                        .content(requestBody.formatted(user2.getId(), sessionId)))
+                .andDo(log())
+                .andExpect(status().isConflict());
+
+        mockMvc.perform(post("/v1/trainings/batch").contentType(MediaType.APPLICATION_JSON)
+                        .content("[" + requestBody.formatted(user2.getId(), sessionId) + "]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].trainingId").doesNotExist())
+                .andExpect(jsonPath("$[0].error").value("Session %s belongs to a training of another user".formatted(sessionId)));
+
+        assertThat(getAllTrainings()).hasSize(trainingCount);
+    }
+
     @Test
     void shouldUpdateTraining_whenUpdatingTraining() throws Exception {
 
@@ -176,6 +350,284 @@ class TrainingApiIntegrationTest extends IntegrationTestBase {
                 .andExpect(jsonPath("$.averageSpeed").value(0.0));
     }
 
+    @Test
+    void shouldAttachManagedUser_whenWritingTrainingOfCachedUser() {
+        User user1 = existingUser(generateClient());
+        User user2 = existingUser(generateClient());
+        userProvider.getUser(user1.getId()).orElseThrow();
+        userProvider.getUser(user2.getId()).orElseThrow();
+
+        LocalDateTime start = LocalDateTime.of(2024, 1, 19, 8, 0);
+        Training training = trainingService.createTraining(new TrainingUpdateDto(user1.getId(), start,
+                start.plusHours(1), "RUNNING", 5, 5, null));
+        assertThat(training.getUser()).isSameAs(entityManager.find(User.class, user1.getId()));
+
+        Training updated = trainingService.updateTraining(training.getId(), new TrainingUpdateDto(user2.getId(), start,
+                start.plusHours(1), "RUNNING", 5, 5, null));
+        assertThat(updated.getUser()).isSameAs(entityManager.find(User.class, user2.getId()));
+    }
+
+    @Test
+    void shouldLoadTrainingsWithTheirUsersInOneStatement_whenListingTrainings() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            User user = existingUser(generateClient());
+            persistTraining(generateTrainingWithActivityType(user, ActivityType.TENNIS));
+            persistTraining(generateTrainingWithActivityType(user, ActivityType.TENNIS));
+        }
+        entityManager.flush();
+        entityManager.clear();
+        // statistics are only collected for this test, enabling them for the whole suite would log session metrics
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+        try {
+            statistics.clear();
+            mockMvc.perform(get("/v1/trainings").contentType(MediaType.APPLICATION_JSON))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$[15].user.email").isNotEmpty());
+            assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+
+            entityManager.clear();
+            statistics.clear();
+            mockMvc.perform(get("/v1/trainings/activityType").param("activityType", "TENNIS"))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$[5].user.email").isNotEmpty());
+            assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+        } finally {
+            statistics.setStatisticsEnabled(false);
+        }
+    }
+
+    @Test
+    void shouldReturnPagesOfTrainingsWithinWindow_whenGettingTrainingsForUserWithLimit() throws Exception {
+        User user1 = existingUser(generateClient());
+        for (int day = 10; day <= 14; day++) {
+            persistTraining(generateTrainingWithDetails(user1, "2024-02-%d 08:00:00".formatted(day),
+                    "2024-02-%d 09:00:00".formatted(day), ActivityType.RUNNING, day, 10));
+        }
+
+        MvcResult firstPage = mockMvc.perform(get("/v1/trainings/{userId}", user1.getId())
+                        .param("from", "2024-02-11T00:00:00")
+                        .param("to", "2024-02-14T08:00:00")
+                        .param("limit", "2"))
+                .andDo(log())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].distance").value(11.0))
+                .andExpect(jsonPath("$[1].distance").value(12.0))
+                .andExpect(header().exists(KeysetPage.NEXT_CURSOR_HEADER))
+                .andReturn();
+
+        mockMvc.perform(get("/v1/trainings/{userId}", user1.getId())
+                        .param("from", "2024-02-11T00:00:00")
+                        .param("to", "2024-02-14T08:00:00")
+                        .param("limit", "2")
+                        .param("cursor", firstPage.getResponse().getHeader(KeysetPage.NEXT_CURSOR_HEADER)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].distance").value(13.0))
+                .andExpect(header().doesNotExist(KeysetPage.NEXT_CURSOR_HEADER));
+
+        mockMvc.perform(get("/v1/trainings/{userId}", user1.getId()).param("from", "2024-02-13T00:00:00"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].distance").value(13.0));
+    }
+
+    @Test
+    void shouldExportAllTrainingsAsNdjson_whenExportingTrainings() throws Exception {
+        User user1 = existingUser(generateClient());
+        Training training1 = persistTraining(generateTraining(user1));
+        int trainingCount = getAllTrainings().size();
+
+        String export = mockMvc.perform(get("/v1/trainings/export"))
+                .andDo(log())
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON))
+                .andReturn().getResponse().getContentAsString();
+
+        List<String> lines = export.lines().toList();
+        assertThat(lines).hasSize(trainingCount);
+        assertThat(JsonPath.<Integer>read(lines.get(trainingCount - 1), "$.id").longValue()).isEqualTo(training1.getId());
+        assertThat(JsonPath.<String>read(lines.get(trainingCount - 1), "$.user.email")).isEqualTo(user1.getEmail());
+    }
+
+    @Test
+    void shouldReturnWeeklyAggregates_whenGettingTrainingAggregatesForUser() throws Exception {
+        User user1 = existingUser(generateClient());
+        persistTraining(generateTrainingWithDetails(user1, "2024-03-04 08:00:00", "2024-03-04 09:00:00", ActivityType.RUNNING, 10, 10));
+        persistTraining(generateTrainingWithDetails(user1, "2024-03-10 08:00:00", "2024-03-10 08:30:00", ActivityType.RUNNING, 6, 12));
+        persistTraining(generateTrainingWithDetails(user1, "2024-03-06 08:00:00", "2024-03-06 10:00:00", ActivityType.CYCLING, 50, 25));
+        persistTraining(generateTrainingWithDetails(user1, "2024-03-11 08:00:00", "2024-03-11 09:00:00", ActivityType.RUNNING, 9, 9));
+        entityManager.flush();
+
+        mockMvc.perform(get("/v1/trainings/{userId}/aggregates", user1.getId())
+                        .param("bucket", "WEEK")
+                        .param("activityType", "RUNNING"))
+                .andDo(log())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].bucketStart").value("2024-03-04"))
+                .andExpect(jsonPath("$[0].count").value(2))
+                .andExpect(jsonPath("$[0].totalDistance").value(16.0))
+                .andExpect(jsonPath("$[0].totalDurationSeconds").value(5400))
+                .andExpect(jsonPath("$[0].averageSpeed").value(closeTo(16.0 / 1.5, 1e-9)))
+                .andExpect(jsonPath("$[1].bucketStart").value("2024-03-11"))
+                .andExpect(jsonPath("$[1].count").value(1));
+
+        mockMvc.perform(get("/v1/trainings/{userId}/aggregates", user1.getId())
+                        .param("bucket", "MONTH")
+                        .param("from", "2024-03-01T00:00:00")
+                        .param("to", "2024-04-01T00:00:00"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].bucketStart").value("2024-03-01"))
+                .andExpect(jsonPath("$[0].count").value(4))
+                .andExpect(jsonPath("$[0].totalDistance").value(75.0));
+    }
+
+    @Test
+    void shouldReturnMatchingTrainingsPageByPage_whenSearchingTrainings() throws Exception {
+        User user1 = existingUser(generateClient());
+        User user2 = existingUser(generateClient());
+        Training training1 = persistTraining(generateTrainingWithDetails(user1, "2024-06-01 08:00:00", "2024-06-01 09:00:00", ActivityType.RUNNING, 10, 10));
+        Training training2 = persistTraining(generateTrainingWithDetails(user1, "2024-06-03 08:00:00", "2024-06-03 09:00:00", ActivityType.RUNNING, 12, 12));
+        Training training3 = persistTraining(generateTrainingWithDetails(user1, "2024-06-05 08:00:00", "2024-06-05 09:00:00", ActivityType.RUNNING, 15, 15));
+        persistTraining(generateTrainingWithDetails(user1, "2024-06-02 08:00:00", "2024-06-02 09:00:00", ActivityType.RUNNING, 3, 3));
+        persistTraining(generateTrainingWithDetails(user1, "2024-05-30 08:00:00", "2024-05-30 09:00:00", ActivityType.RUNNING, 10, 10));
+        persistTraining(generateTrainingWithDetails(user1, "2024-06-04 08:00:00", "2024-06-04 09:00:00", ActivityType.CYCLING, 30, 30));
+        persistTraining(generateTrainingWithDetails(user2, "2024-06-04 08:00:00", "2024-06-04 09:00:00", ActivityType.RUNNING, 10, 10));
+
+        MvcResult firstPage = mockMvc.perform(get("/v1/trainings/search")
+                        .param("userId", user1.getId().toString())
+                        .param("activityType", "RUNNING")
+                        .param("from", "2024-06-01T00:00:00")
+                        .param("minDistance", "5")
+                        .param("limit", "2"))
+                .andDo(log())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].id").value(training1.getId()))
+                .andExpect(jsonPath("$[0].user.id").value(user1.getId()))
+                .andExpect(jsonPath("$[1].id").value(training2.getId()))
+                .andExpect(header().exists(KeysetPage.NEXT_CURSOR_HEADER))
+                .andReturn();
+
+        mockMvc.perform(get("/v1/trainings/search")
+                        .param("userId", user1.getId().toString())
+                        .param("activityType", "RUNNING")
+                        .param("from", "2024-06-01T00:00:00")
+                        .param("minDistance", "5")
+                        .param("limit", "2")
+                        .param("cursor", firstPage.getResponse().getHeader(KeysetPage.NEXT_CURSOR_HEADER)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].id").value(training3.getId()))
+                .andExpect(header().doesNotExist(KeysetPage.NEXT_CURSOR_HEADER));
+
+        mockMvc.perform(get("/v1/trainings/search")
+                        .param("minDistance", "20")
+                        .param("maxDistance", "10")
+                        .param("limit", "2"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void shouldUseTheMatchingIndex_forEveryCombinationOfSearchCriteria() throws Exception {
+        LocalDateTime from = LocalDateTime.of(2024, 6, 1, 0, 0);
+        String cursor = KeysetCursor.encode(from, 0L);
+
+        for (int combination = 0; combination < 16; combination++) {
+            TrainingSearchCriteria criteria = new TrainingSearchCriteria(
+                    (combination & 1) != 0 ? 1L : null,
+                    (combination & 2) != 0 ? ActivityType.RUNNING : null,
+                    (combination & 4) != 0 ? from : null,
+                    (combination & 4) != 0 ? from.plusMonths(1) : null,
+                    (combination & 8) != 0 ? 5.0 : null,
+                    (combination & 8) != 0 ? 50.0 : null);
+            String expectedIndex = switch (combination & 3) {
+                case 0 -> "IDX_TRAININGS_START_TIME";
+                case 1 -> "IDX_TRAININGS_USER_ID_START_TIME";
+                case 2 -> "IDX_TRAININGS_ACTIVITY_TYPE_START_TIME";
+                default -> "IDX_TRAININGS_USER_ID_ACTIVITY_TYPE_START_TIME";
+            };
+
+            List<String> statements = SqlRecorder.record(() -> {
+                trainingProvider.searchTrainings(criteria, null, 10);
+                trainingProvider.searchTrainings(criteria, cursor, 10);
+            });
+
+            assertThat(statements).hasSize(2);
+            for (int page = 0; page < statements.size(); page++) {
+                String statement = statements.get(page);
+                String plan = jdbcTemplate.query(connection -> connection.prepareStatement("explain " + statement),
+                        (ResultSetExtractor<String>) resultSet -> resultSet.next() ? resultSet.getString(1) : null);
+                if (page == 0 && (combination & 7) == 1) {
+                    // H2 ignores the ORDER BY when choosing the index of a join, so on the first page of a user without
+                    // a time window it picks the equally selective index of the user foreign key and sorts the rows
+                    assertThat(plan).as("plan of %s", criteria).containsPattern("/\\* PUBLIC\\.FK\\w+_INDEX_\\w+: USER_ID = ");
+                } else {
+                    assertThat(plan).as("plan of %s", criteria)
+                            .containsPattern("/\\* PUBLIC\\." + expectedIndex + "[: ]")
+                            .contains("/* index sorted */");
+                }
+            }
+        }
+    }
+
+    @Test
+    void shouldMaintainMonthlySummaries_andPassThemGroupedByUser_withSingleQuery() throws Exception {
+        User user1 = existingUser(generateClient());
+        User user2 = existingUser(generateClient());
+        LocalDateTime july = LocalDateTime.of(2023, 7, 1, 8, 0);
+        trainingService.createTraining(new TrainingUpdateDto(user1.getId(), july.plusDays(2), july.plusDays(2).plusHours(1),
+                "RUNNING", 5, 5, null));
+        Training moved = trainingService.createTraining(new TrainingUpdateDto(user1.getId(), july.plusDays(9),
+                july.plusDays(9).plusMinutes(30), "RUNNING", 10, 20, null));
+        trainingService.createTraining(new TrainingUpdateDto(user1.getId(), july.plusDays(14), july.plusDays(14).plusHours(1),
+                "CYCLING", 20, 20, null));
+        trainingService.createTraining(new TrainingUpdateDto(user1.getId(), july.plusDays(20), july.plusDays(20).plusHours(2),
+                "CYCLING", 30, 15, null));
+        trainingService.createTraining(new TrainingUpdateDto(user2.getId(), july.plusDays(19), july.plusDays(19).plusMinutes(20),
+                "RUNNING", 3, 9, null));
+        trainingService.createTraining(new TrainingUpdateDto(user2.getId(), july.plusMonths(1), july.plusMonths(1).plusHours(1),
+                "RUNNING", 7, 7, null));
+        trainingService.updateTraining(moved.getId(), new TrainingUpdateDto(user1.getId(), july.plusDays(9),
+                july.plusDays(9).plusMinutes(40), "WALKING", 4, 6, null));
+        entityManager.flush();
+        entityManager.clear();
+
+        List<String> users = new ArrayList<>();
+        List<MonthlyTrainingSummary> summaries = new ArrayList<>();
+        List<String> statements = SqlRecorder.record(() -> trainingProvider.forEachUserMonthlySummary(YearMonth.of(2023, 7),
+                (user, summary) -> {
+                    users.add(user.getEmail());
+                    summaries.add(summary);
+                }));
+
+        assertThat(statements).hasSize(1);
+        String plan = jdbcTemplate.query(connection -> connection.prepareStatement("explain " + statements.get(0)),
+                (ResultSetExtractor<String>) resultSet -> resultSet.next() ? resultSet.getString(1) : null);
+        assertThat(plan).containsIgnoringCase("idx_monthly_activity_summaries_month_start_user_id");
+        assertThat(users).containsExactly(user1.getEmail(), user2.getEmail());
+        assertThat(summaries.get(0).activities()).containsExactly(
+                new ActivitySummary(ActivityType.RUNNING, 1, 5, 3600, 5, 5),
+                new ActivitySummary(ActivityType.CYCLING, 2, 50, 3 * 3600, 30, 20),
+                new ActivitySummary(ActivityType.WALKING, 1, 4, 2400, 4, 6));
+        assertThat(summaries.get(0).trainings()).isEqualTo(4);
+        assertThat(summaries.get(0).longestDistance()).isEqualTo(30);
+        assertThat(summaries.get(1).activities()).containsExactly(new ActivitySummary(ActivityType.RUNNING, 1, 3, 1200, 3, 9));
+    }
+
+    @Test
+    void shouldRejectEmptyWindow_whenGettingTrainingsForUser() throws Exception {
+        User user1 = existingUser(generateClient());
+
+        mockMvc.perform(get("/v1/trainings/{userId}", user1.getId())
+                        .param("from", "2024-02-14T00:00:00")
+                        .param("to", "2024-02-11T00:00:00"))
+                .andExpect(status().isBadRequest());
+    }
+
     private static User generateClient() {
         return new User(randomUUID().toString(), randomUUID().toString(), now(), randomUUID().toString());
     }
@@ -0,0 +1,76 @@
+package pl.wsb.fitnesstracker.training;
+
+import pl.wsb.fitnesstracker.Benchmark;
+import pl.wsb.fitnesstracker.BenchmarkData;
+import pl.wsb.fitnesstracker.BenchmarkRunner;
+import pl.wsb.fitnesstracker.training.api.TrainingService;
+import pl.wsb.fitnesstracker.training.internal.TrainingUpdateDto;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.logging.Logger;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compares creating the trainings of a device sync one by one through {@link TrainingService#createTraining} with
+ * the batch ingest, reporting the throughput in trainings per second. Batch sizes can be overridden with
+ * {@code -Dbenchmark.trainings=...}.
+ */
+@Benchmark
+@SpringBootTest
+class TrainingBatchIngestBenchmark {
+
+    private static final Logger log = Logger.getLogger(TrainingBatchIngestBenchmark.class.getName());
+
+    private static final int USERS = 100;
+
+    @Autowired
+    private TrainingService trainingService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    void cleanUp() {
+        BenchmarkData.deleteUsers(jdbcTemplate);
+    }
+
+    @Test
+    void batchIngestShouldHaveHigherThroughputThanSingleCreates() {
+        BenchmarkData.insertUsers(jdbcTemplate, 0, USERS);
+        List<Long> userIds = BenchmarkData.userIds(jdbcTemplate);
+
+        for (int size : BenchmarkData.sizes("benchmark.trainings", "50,1000")) {
+            List<TrainingUpdateDto> trainings = trainings(userIds, size);
+
+            BenchmarkRunner.Result single = BenchmarkRunner.measure("createTraining x" + size, 3, 20,
+                    () -> trainings.forEach(trainingService::createTraining));
+            BenchmarkRunner.Result batch = BenchmarkRunner.measure("createTrainings x" + size, 3, 20,
+                    () -> assertThat(trainingService.createTrainings(trainings)).allMatch(result -> result.error() == null));
+
+            log.info("%d trainings: single %.0f trainings/s, batch %.0f trainings/s"
+                    .formatted(size, throughput(size, single), throughput(size, batch)));
+            assertThat(batch.meanMicros()).isLessThan(single.meanMicros());
+        }
+    }
+
+    private static List<TrainingUpdateDto> trainings(List<Long> userIds, int count) {
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 8, 0);
+        return IntStream.range(0, count)
+                .mapToObj(i -> new TrainingUpdateDto(userIds.get(i % userIds.size()), start.plusHours(i),
+                        start.plusHours(i).plusMinutes(45), "RUNNING", 8.5, 11.3, null))
+                .toList();
+    }
+
+    private static double throughput(int size, BenchmarkRunner.Result result) {
+        return size * 1_000_000.0 / result.meanMicros();
+    }
+
+}
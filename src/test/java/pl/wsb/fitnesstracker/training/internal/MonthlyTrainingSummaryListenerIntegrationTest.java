@@ -0,0 +1,92 @@
+package pl.wsb.fitnesstracker.training.internal;
+
+import pl.wsb.fitnesstracker.IntegrationTest;
+import pl.wsb.fitnesstracker.IntegrationTestBase;
+import pl.wsb.fitnesstracker.training.api.Training;
+import pl.wsb.fitnesstracker.training.api.TrainingService;
+import pl.wsb.fitnesstracker.user.api.User;
+
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Date;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static java.time.LocalDate.now;
+import static java.util.UUID.randomUUID;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@IntegrationTest
+@Transactional
+class MonthlyTrainingSummaryListenerIntegrationTest extends IntegrationTestBase {
+
+    private static final LocalDateTime JULY = LocalDateTime.of(2023, 7, 1, 8, 0);
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private TrainingService trainingService;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void shouldRebuildSummariesOfMonth_countingTrainingsStoredWithoutEvents() throws Exception {
+        User user = existingUser(generateClient());
+        trainingService.createTraining(new TrainingUpdateDto(user.getId(), JULY, JULY.plusHours(1), "RUNNING", 5, 5, null));
+        // stored without events, like the trainings stored before the summaries were maintained
+        persistTraining(new Training(user, JULY.plusDays(3), JULY.plusDays(3).plusHours(1), ActivityType.RUNNING, 8, 8));
+        persistTraining(new Training(user, JULY.plusDays(5), JULY.plusDays(5).plusHours(2), ActivityType.CYCLING, 30, 15));
+        persistTraining(new Training(user, JULY.plusMonths(1), JULY.plusMonths(1).plusHours(1), ActivityType.CYCLING, 20, 20));
+        entityManager.flush();
+
+        mockMvc.perform(post("/v1/trainings/summaries/{month}/rebuild", "2023-07"))
+                .andExpect(status().isOk())
+                .andExpect(content().string("2"));
+
+        assertThat(summaries(user)).containsExactly(
+                Map.of("MONTH_START", Date.valueOf("2023-07-01"), "ACTIVITY_TYPE", ActivityType.RUNNING.ordinal(),
+                        "TRAININGS", 2, "TOTAL_DISTANCE", 13.0),
+                Map.of("MONTH_START", Date.valueOf("2023-07-01"), "ACTIVITY_TYPE", ActivityType.CYCLING.ordinal(),
+                        "TRAININGS", 1, "TOTAL_DISTANCE", 30.0));
+    }
+
+    @Test
+    void shouldDeleteSummary_whenItsLastTrainingIsMovedAway() {
+        User user = existingUser(generateClient());
+        Training training = trainingService.createTraining(new TrainingUpdateDto(user.getId(), JULY, JULY.plusHours(1),
+                "RUNNING", 5, 5, null));
+
+        trainingService.updateTraining(training.getId(), new TrainingUpdateDto(user.getId(), JULY.plusMonths(1),
+                JULY.plusMonths(1).plusHours(1), "RUNNING", 6, 6, null));
+        entityManager.flush();
+
+        assertThat(summaries(user)).containsExactly(
+                Map.of("MONTH_START", Date.valueOf("2023-08-01"), "ACTIVITY_TYPE", ActivityType.RUNNING.ordinal(),
+                        "TRAININGS", 1, "TOTAL_DISTANCE", 6.0));
+    }
+
+    private List<Map<String, Object>> summaries(User user) {
+        return jdbcTemplate.queryForList("""
+                select month_start, activity_type, trainings, total_distance from monthly_activity_summaries
+                where user_id = ? order by month_start, activity_type""", user.getId());
+    }
+
+    private static User generateClient() {
+        return new User(randomUUID().toString(), randomUUID().toString(), now(), randomUUID().toString());
+    }
+
+}
@@ -2,23 +2,34 @@ package pl.wsb.fitnesstracker.user.internal;
 
 import pl.wsb.fitnesstracker.IntegrationTest;
 import pl.wsb.fitnesstracker.IntegrationTestBase;
+import pl.wsb.fitnesstracker.pagination.api.KeysetPage;
+import pl.wsb.fitnesstracker.statistics.api.Statistics;
+import pl.wsb.fitnesstracker.training.api.Training;
+import pl.wsb.fitnesstracker.training.internal.ActivityType;
 import pl.wsb.fitnesstracker.user.api.User;
+import pl.wsb.fitnesstracker.user.api.UserProvider;
+import com.jayway.jsonpath.JsonPath;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.List;
 
 import static java.time.format.DateTimeFormatter.ISO_DATE;
 import static java.util.UUID.randomUUID;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.log;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
@@ -30,6 +41,9 @@ class UserApiIntegrationTest extends IntegrationTestBase {
     @Autowired
     private MockMvc mockMvc;
 
+    @Autowired
+    private UserProvider userProvider;
+
     @Test
     void shouldReturnAllUsers_whenGettingAllUsers() throws Exception {
 
@@ -72,6 +86,48 @@ class UserApiIntegrationTest extends IntegrationTestBase {
                 .andExpect(jsonPath("$[12]").doesNotExist());
     }
 
+    @Test
+    void shouldReturnAllUsersPageByPage_whenGettingUsersWithLimit() throws Exception {
+        existingUser(generateUser());
+        existingUser(generateUser());
+        int allUsers = getAllUsers().size();
+
+        int returnedUsers = 0;
+        String cursor = null;
+        do {
+            MockHttpServletRequestBuilder request = get("/v1/users").param("limit", "5");
+            if (cursor != null) {
+                request.param("cursor", cursor);
+            }
+            MvcResult page = mockMvc.perform(request)
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.length()").value(lessThanOrEqualTo(5)))
+                    .andReturn();
+            returnedUsers += JsonPath.<List<?>>read(page.getResponse().getContentAsString(), "$").size();
+            cursor = page.getResponse().getHeader(KeysetPage.NEXT_CURSOR_HEADER);
+        } while (cursor != null);
+
+        assertThat(returnedUsers).isEqualTo(allUsers);
+    }
+
+    @Test
+    void shouldReturnFirstPageOfSimpleUsers_whenGettingSimpleUsersWithLimit() throws Exception {
+        mockMvc.perform(get("/v1/users/simple").param("limit", "3"))
+                .andDo(log())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(3)))
+                .andExpect(jsonPath("$[0].firstName").exists())
+                .andExpect(jsonPath("$[0].email").doesNotExist())
+                .andExpect(header().exists(KeysetPage.NEXT_CURSOR_HEADER));
+    }
+
+    @Test
+    void shouldRejectTooLargeLimit_whenGettingDetailedUsersWithLimit() throws Exception {
+        mockMvc.perform(get("/v1/users/details").param("limit", String.valueOf(KeysetPage.MAX_LIMIT + 1)))
+                .andDo(log())
+                .andExpect(status().isBadRequest());
+    }
+
     @Test
     void shouldReturnDetailsAboutUser_whenGettingUserById() throws Exception {
         User user1 = existingUser(generateUser());
@@ -99,6 +155,43 @@ class UserApiIntegrationTest extends IntegrationTestBase {
                 .andExpect(jsonPath("$[0].email").value(user1.getEmail()));
     }
 
+    @Test
+    void shouldReturnUsersMatchingEmailPartIgnoringCase_whenGettingUsersByEmailPart() throws Exception {
+        User user1 = existingUser(generateUserWithEmail("Anna.Nowak@Example.com"));
+        existingUser(generateUserWithEmail("john.smith@example.com"));
+
+        mockMvc.perform(get("/v1/users/email").param("email", "nOWAK@exa").contentType(MediaType.APPLICATION_JSON))
+                .andDo(log())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].id").value(user1.getId().intValue()))
+                .andExpect(jsonPath("$[0].email").value(user1.getEmail()));
+    }
+
+    @Test
+    void shouldReturnUsersMatchingShortEmailPart_whenGettingUsersByEmailPart() throws Exception {
+        User user1 = existingUser(generateUserWithEmail("qx@example.com"));
+
+        mockMvc.perform(get("/v1/users/email").param("email", "QX").contentType(MediaType.APPLICATION_JSON))
+                .andDo(log())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].id").value(user1.getId().intValue()));
+    }
+
+    @Test
+    void shouldNotReturnDeletedUser_whenGettingUsersByEmailPart() throws Exception {
+        User user1 = existingUser(generateUserWithEmail("to.be.deleted@example.com"));
+
+        mockMvc.perform(delete("/v1/users/{userId}", user1.getId()))
+                .andExpect(status().isNoContent());
+
+        mockMvc.perform(get("/v1/users/email").param("email", "be.deleted").contentType(MediaType.APPLICATION_JSON))
+                .andDo(log())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(0)));
+    }
+
     @Test
     void shouldReturnAllUsersOlderThan_whenGettingAllUsersYoungerThan() throws Exception {
         User user1 = existingUser(generateUserWithDate(LocalDate.of(2050, 8, 11)));
@@ -115,6 +208,40 @@ class UserApiIntegrationTest extends IntegrationTestBase {
                 .andExpect(jsonPath("$[1]").doesNotExist());
     }
 
+    @Test
+    void shouldReturnPagesOfUsersYoungerThan_whenGettingUsersYoungerThanWithLimit() throws Exception {
+        User user1 = existingUser(generateUserWithDate(LocalDate.of(2050, 1, 3)));
+        User user2 = existingUser(generateUserWithDate(LocalDate.of(2050, 1, 1)));
+        User user3 = existingUser(generateUserWithDate(LocalDate.of(2050, 1, 2)));
+
+        MvcResult firstPage = mockMvc.perform(get("/v1/users/younger/{time}", LocalDate.of(2049, 12, 31)).param("limit", "2"))
+                .andDo(log())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].id").value(user2.getId()))
+                .andExpect(jsonPath("$[1].id").value(user3.getId()))
+                .andExpect(header().exists(KeysetPage.NEXT_CURSOR_HEADER))
+                .andReturn();
+
+        mockMvc.perform(get("/v1/users/younger/{time}", LocalDate.of(2049, 12, 31))
+                        .param("limit", "2")
+                        .param("cursor", firstPage.getResponse().getHeader(KeysetPage.NEXT_CURSOR_HEADER)))
+                .andDo(log())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].id").value(user1.getId()))
+                .andExpect(header().doesNotExist(KeysetPage.NEXT_CURSOR_HEADER));
+    }
+
+    @Test
+    void shouldRejectMalformedCursor_whenGettingUsersYoungerThanWithLimit() throws Exception {
+        mockMvc.perform(get("/v1/users/younger/{time}", LocalDate.of(2049, 12, 31))
+                        .param("limit", "2")
+                        .param("cursor", "not-a-cursor"))
+                .andDo(log())
+                .andExpect(status().isBadRequest());
+    }
+
     @Test
     void shouldRemoveUserFromRepository_whenDeletingClient() throws Exception {
         User user1 = existingUser(generateUser());
@@ -129,6 +256,49 @@ class UserApiIntegrationTest extends IntegrationTestBase {
         assertThat(allUserDebug.size()).isGreaterThan(allUser.size());
     }
 
+    @Test
+    void shouldRemoveUserWithTrainingsAndStatistics_whenDeletingUser() throws Exception {
+        User user1 = existingUser(generateUser());
+        User user2 = existingUser(generateUser());
+        persistTraining(generateTraining(user1));
+        persistTraining(generateTraining(user2));
+        persistStatistic(new Statistics(user1, 1, 10.0, 500));
+        int trainingsBefore = getAllTrainings().size();
+        int statisticsBefore = getAllStatistics().size();
+
+        mockMvc.perform(delete("/v1/users/{userId}", user1.getId()))
+                .andDo(log())
+                .andExpect(status().isNoContent());
+
+        assertThat(getAllUsers()).extracting(User::getId).doesNotContain(user1.getId()).contains(user2.getId());
+        assertThat(getAllTrainings()).hasSize(trainingsBefore - 1)
+                .extracting(training -> training.getUser().getId()).doesNotContain(user1.getId());
+        assertThat(getAllStatistics()).hasSize(statisticsBefore - 1);
+    }
+
+    @Test
+    void shouldRemoveAllGivenUsers_whenPurgingUsers() throws Exception {
+        User user1 = existingUser(generateUser());
+        User user2 = existingUser(generateUser());
+        User user3 = existingUser(generateUser());
+        persistTraining(generateTraining(user1));
+        persistStatistic(new Statistics(user2, 1, 10.0, 500));
+        int usersBefore = getAllUsers().size();
+
+        mockMvc.perform(post("/v1/users/purge")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[%d, %d, %d, -1]".formatted(user1.getId(), user2.getId(), user1.getId())))
+                .andDo(log())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.requested").value(4))
+                .andExpect(jsonPath("$.deleted").value(2));
+
+        assertThat(getAllUsers()).hasSize(usersBefore - 2)
+                .extracting(User::getId).contains(user3.getId()).doesNotContain(user1.getId(), user2.getId());
+        assertThat(getAllTrainings()).extracting(training -> training.getUser().getId()).doesNotContain(user1.getId());
+        assertThat(getAllStatistics()).extracting(statistics -> statistics.getUser().getId()).doesNotContain(user2.getId());
+    }
+
     @Test
     void shouldPersistUser_whenCreatingUser() throws Exception {
 
@@ -167,6 +337,51 @@ class UserApiIntegrationTest extends IntegrationTestBase {
 
     }
 
+    @Test
+    void shouldImportValidUsersAndReportFailures_whenImportingUsersInBulk() throws Exception {
+        User existing = existingUser(generateUser());
+
+        String importRequest = """
+                [
+                {"firstName": "Mike", "lastName": "Scott", "birthdate": "1999-09-29", "email": "mike.scott@domain.com"},
+                {"firstName": "Pam", "lastName": "Beesly", "birthdate": "1990-03-25", "email": "%s"},
+                {"firstName": "Jim", "lastName": "Halpert", "birthdate": "1988-10-01", "email": "mike.scott@domain.com"},
+                {"firstName": "Dwight", "lastName": "Schrute", "email": "dwight.schrute@domain.com"}
+                ]
+                """.formatted(existing.getEmail());
+
+        mockMvc.perform(post("/v1/users/bulk").contentType(MediaType.APPLICATION_JSON).content(importRequest))
+                .andDo(log())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.imported").value(1))
+                .andExpect(jsonPath("$.failures", hasSize(3)))
+                .andExpect(jsonPath("$.failures[0].index").value(1))
+                .andExpect(jsonPath("$.failures[0].email").value(existing.getEmail()))
+                .andExpect(jsonPath("$.failures[1].index").value(2))
+                .andExpect(jsonPath("$.failures[2].index").value(3));
+
+        List<User> allUsers = getAllUsers();
+        assertThat(allUsers).hasSize(12);
+        assertThat(allUsers.get(11).getEmail()).isEqualTo("mike.scott@domain.com");
+    }
+
+    @Test
+    void shouldImportAllUsers_whenImportingNdjsonInBulk() throws Exception {
+        String importRequest = """
+                {"firstName": "Mike", "lastName": "Scott", "birthdate": "1999-09-29", "email": "mike.scott@domain.com"}
+                {"firstName": "Pam", "lastName": "Beesly", "birthdate": "1990-03-25", "email": "pam.beesly@domain.com"}
+                """;
+
+        mockMvc.perform(post("/v1/users/bulk").contentType(MediaType.APPLICATION_NDJSON).content(importRequest))
+                .andDo(log())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.imported").value(2))
+                .andExpect(jsonPath("$.failures").isEmpty());
+
+        assertThat(getAllUsers()).extracting(User::getEmail)
+                .contains("mike.scott@domain.com", "pam.beesly@domain.com");
+    }
+
     @Test
     void  User_whenUpdatingUser() throws Exception {
         User user1 = existingUser(generateUser());
@@ -203,6 +418,59 @@ class UserApiIntegrationTest extends IntegrationTestBase {
         assertThat(user.getEmail()).isEqualTo(USER_EMAIL);
     }
 
+    @Test
+    void shouldReturnUpdatedUser_whenGettingCachedUserAfterUpdate() throws Exception {
+        User user1 = existingUser(generateUser());
+
+        mockMvc.perform(get("/v1/users/{userId}", user1.getId()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.email").value(user1.getEmail()));
+
+        mockMvc.perform(put("/v1/users/{userId}", user1.getId())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("""
+                                {"email": "cached.user@domain.com"}
+                                """))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(get("/v1/users/{userId}", user1.getId()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.email").value("cached.user@domain.com"));
+
+        mockMvc.perform(get("/actuator/metrics/cache.gets").param("tag", "cache:users", "result:hit"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.measurements[0].value").isNumber());
+    }
+
+    @Test
+    void shouldNotShareCachedUser_whenReturnedUserIsModified() {
+        User user1 = existingUser(generateUser());
+        userProvider.getUser(user1.getId()).orElseThrow();
+
+        User cached = userProvider.getUser(user1.getId()).orElseThrow();
+        cached.setEmail("modified.user@domain.com");
+
+        assertThat(userProvider.getUser(user1.getId()).orElseThrow())
+                .isNotSameAs(cached)
+                .extracting(User::getEmail).isEqualTo(user1.getEmail());
+    }
+
+    @Test
+    void shouldReturnCopy_whenGettingUserNotCachedYet() {
+        User user1 = existingUser(generateUser());
+
+        User found = userProvider.getUser(user1.getId()).orElseThrow();
+        found.setEmail("modified.user@domain.com");
+
+        assertThat(found).isNotSameAs(user1);
+        assertThat(user1.getEmail()).isNotEqualTo("modified.user@domain.com");
+    }
+
+    private static Training generateTraining(User user) {
+        LocalDateTime start = LocalDateTime.now().minusHours(1);
+        return new Training(user, start, start.plusMinutes(45), ActivityType.RUNNING, 8.5, 11.3);
+    }
+
     public static User generateUser() {
         return new User(randomUUID().toString(), randomUUID().toString(), LocalDate.now(), randomUUID().toString());
     }
@@ -211,5 +479,9 @@ class UserApiIntegrationTest extends IntegrationTestBase {
         return new User(randomUUID().toString(), randomUUID().toString(), date, randomUUID().toString());
     }
 
+    private static User generateUserWithEmail(String email) {
+        return new User(randomUUID().toString(), randomUUID().toString(), LocalDate.now(), email);
+    }
+
 
 }
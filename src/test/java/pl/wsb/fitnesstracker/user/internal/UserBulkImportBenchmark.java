@@ -0,0 +1,60 @@
+package pl.wsb.fitnesstracker.user.internal;
+
+import pl.wsb.fitnesstracker.Benchmark;
+import pl.wsb.fitnesstracker.BenchmarkData;
+import pl.wsb.fitnesstracker.BenchmarkRunner;
+import pl.wsb.fitnesstracker.user.api.User;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compares importing users one by one through {@link UserServiceImpl#createUser(User)} with the chunked bulk import
+ * using JDBC batches. Number of users per import can be overridden with {@code -Dbenchmark.imports=...}.
+ */
+@Benchmark
+@SpringBootTest
+class UserBulkImportBenchmark {
+
+    @Autowired
+    private UserServiceImpl userService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final AtomicInteger nextIndex = new AtomicInteger();
+
+    @AfterEach
+    void cleanUp() {
+        BenchmarkData.deleteUsers(jdbcTemplate);
+    }
+
+    @Test
+    void bulkImportShouldBeFasterThanSingleInserts() {
+        for (int size : BenchmarkData.sizes("benchmark.imports", "10000")) {
+            BenchmarkRunner.Result single = BenchmarkRunner.measure("createUser x" + size, 1, 3,
+                    () -> users(size).forEach(userService::createUser));
+            BenchmarkRunner.Result bulk = BenchmarkRunner.measure("importUsers x" + size, 1, 3,
+                    () -> assertThat(userService.importUsers(users(size).iterator()).imported()).isEqualTo(size));
+
+            assertThat(bulk.meanMicros()).isLessThan(single.meanMicros());
+        }
+    }
+
+    private List<User> users(int count) {
+        return IntStream.range(0, count)
+                .map(i -> nextIndex.getAndIncrement())
+                .mapToObj(i -> new User("First" + i, "Last" + i, LocalDate.of(1990, 1, 1), BenchmarkData.email(i)))
+                .toList();
+    }
+
+}
@@ -0,0 +1,79 @@
+package pl.wsb.fitnesstracker.user.internal;
+
+import pl.wsb.fitnesstracker.BenchmarkData;
+import pl.wsb.fitnesstracker.IntegrationTest;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.startsWith;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.log;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * The chunks of an import are inserted in their own transactions, which must fail and roll back for the one by one
+ * fallback to be used, so unlike the other user tests this one commits its data and removes it afterwards.
+ */
+@IntegrationTest
+@SpringBootTest
+@AutoConfigureMockMvc(addFilters = false)
+class UserBulkImportIntegrationTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @SpyBean
+    private UserRepository userRepository;
+
+    @AfterEach
+    void cleanUp() {
+        BenchmarkData.deleteUsers(jdbcTemplate);
+    }
+
+    @Test
+    void shouldImportRestOfChunkAndReportDuplicate_whenEmailIsTakenConcurrently() throws Exception {
+        BenchmarkData.insertUsers(jdbcTemplate, 0, 1);
+        // the email is taken after the chunk has been checked, as by a concurrent request
+        doReturn(Set.of()).when(userRepository).findExistingEmails(any());
+
+        String importRequest = """
+                [
+                {"firstName": "Mike", "lastName": "Scott", "birthdate": "1999-09-29", "email": "%s"},
+                {"firstName": "Pam", "lastName": "Beesly", "birthdate": "1990-03-25", "email": "%s"},
+                {"firstName": "Jim", "lastName": "Halpert", "birthdate": "1988-10-01", "email": "%s"}
+                ]
+                """.formatted(BenchmarkData.email(1), BenchmarkData.email(0), BenchmarkData.email(2));
+
+        mockMvc.perform(post("/v1/users/bulk").contentType(MediaType.APPLICATION_JSON).content(importRequest))
+                .andDo(log())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.imported").value(2))
+                .andExpect(jsonPath("$.failures", hasSize(1)))
+                .andExpect(jsonPath("$.failures[0].index").value(1))
+                .andExpect(jsonPath("$.failures[0].email").value(BenchmarkData.email(0)))
+                .andExpect(jsonPath("$.failures[0].reason").value(startsWith("Constraint violation")));
+
+        assertThat(jdbcTemplate.queryForList("select email from users where email like ? order by email", String.class,
+                "%@" + BenchmarkData.EMAIL_DOMAIN))
+                .containsExactly(BenchmarkData.email(0), BenchmarkData.email(1), BenchmarkData.email(2));
+    }
+
+}
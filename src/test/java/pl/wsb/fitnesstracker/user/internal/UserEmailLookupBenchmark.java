@@ -0,0 +1,65 @@
+package pl.wsb.fitnesstracker.user.internal;
+
+import pl.wsb.fitnesstracker.Benchmark;
+import pl.wsb.fitnesstracker.BenchmarkData;
+import pl.wsb.fitnesstracker.BenchmarkRunner;
+import pl.wsb.fitnesstracker.user.api.User;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compares the exact email lookup served by the unique index with the previous implementation, which loaded the whole
+ * {@code users} table and filtered it in Java. Table sizes can be overridden with {@code -Dbenchmark.users=...}.
+ */
+@Benchmark
+@SpringBootTest
+class UserEmailLookupBenchmark {
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    void cleanUp() {
+        BenchmarkData.deleteUsers(jdbcTemplate);
+    }
+
+    @Test
+    void indexedLookupShouldNotDependOnTableSize() {
+        int seeded = 0;
+        for (int size : BenchmarkData.sizes("benchmark.users", "10000,100000,1000000")) {
+            BenchmarkData.insertUsers(jdbcTemplate, seeded, size);
+            seeded = size;
+            int users = size;
+
+            BenchmarkRunner.Result fullScan = BenchmarkRunner.measure("findAll+filter @" + size, 1, 5,
+                    () -> assertThat(fullScanLookup(BenchmarkData.email(randomIndex(users)))).isPresent());
+            BenchmarkRunner.Result indexed = BenchmarkRunner.measure("findByEmail @" + size, 200, 2_000,
+                    () -> assertThat(userRepository.findByEmail(BenchmarkData.email(randomIndex(users)))).isPresent());
+
+            assertThat(indexed.p99Micros()).isLessThan(fullScan.meanMicros());
+        }
+    }
+
+    private Optional<User> fullScanLookup(String email) {
+        return userRepository.findAll().stream()
+                .filter(user -> Objects.equals(user.getEmail(), email))
+                .findFirst();
+    }
+
+    private static int randomIndex(int bound) {
+        return ThreadLocalRandom.current().nextInt(bound);
+    }
+
+}
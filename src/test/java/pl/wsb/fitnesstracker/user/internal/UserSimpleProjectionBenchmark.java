@@ -0,0 +1,81 @@
+package pl.wsb.fitnesstracker.user.internal;
+
+import pl.wsb.fitnesstracker.Benchmark;
+import pl.wsb.fitnesstracker.BenchmarkData;
+import pl.wsb.fitnesstracker.BenchmarkRunner;
+import pl.wsb.fitnesstracker.user.api.UserMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compares reading the simple user view through {@code User} entities mapped to {@link UserSimpleDto} with the
+ * constructor expression projection selecting only the needed columns. Table size can be overridden with
+ * {@code -Dbenchmark.users=...}.
+ */
+@Benchmark
+@SpringBootTest
+class UserSimpleProjectionBenchmark {
+
+    private static final int PAGE_SIZE = 1_000;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private UserServiceImpl userService;
+
+    @Autowired
+    private UserMapper userMapper;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    void cleanUp() {
+        BenchmarkData.deleteUsers(jdbcTemplate);
+    }
+
+    @Test
+    void projectionShouldAllocateLessThanEntities() {
+        for (int size : BenchmarkData.sizes("benchmark.users", "100000")) {
+            BenchmarkData.insertUsers(jdbcTemplate, 0, size);
+            String emails = "%@" + BenchmarkData.EMAIL_DOMAIN;
+            long minId = jdbcTemplate.queryForObject("select min(id) from users where email like ?", Long.class, emails);
+            long maxId = jdbcTemplate.queryForObject("select id from users where email like ? order by id desc offset ? rows fetch next 1 rows only",
+                    Long.class, emails, PAGE_SIZE);
+
+            BenchmarkRunner.Result entityPage = BenchmarkRunner.measure("entity page @" + size, 50, 500,
+                    () -> assertThat(userRepository.findAllAfter(randomId(minId, maxId), Limit.of(PAGE_SIZE)).stream()
+                            .map(userMapper::toSimpleDto)
+                            .toList()).hasSize(PAGE_SIZE));
+            BenchmarkRunner.Result projectionPage = BenchmarkRunner.measure("projection page @" + size, 50, 500,
+                    () -> assertThat(userRepository.findAllSimpleAfter(randomId(minId, maxId), Limit.of(PAGE_SIZE))).hasSize(PAGE_SIZE));
+
+            AtomicLong count = new AtomicLong();
+            BenchmarkRunner.Result entityStream = BenchmarkRunner.measure("entity stream @" + size, 1, 5,
+                    () -> userService.forEachUser(user -> count.incrementAndGet()));
+            BenchmarkRunner.Result projectionStream = BenchmarkRunner.measure("projection stream @" + size, 1, 5,
+                    () -> userService.forEachSimpleUser(user -> count.incrementAndGet()));
+
+            assertThat(projectionPage.allocatedBytesPerOperation()).isLessThan(entityPage.allocatedBytesPerOperation());
+            assertThat(projectionStream.allocatedBytesPerOperation()).isLessThan(entityStream.allocatedBytesPerOperation());
+            assertThat(projectionPage.p99Micros()).isLessThan(entityPage.p99Micros());
+
+            BenchmarkData.deleteUsers(jdbcTemplate);
+        }
+    }
+
+    private static long randomId(long minId, long maxId) {
+        return ThreadLocalRandom.current().nextLong(minId - 1, maxId);
+    }
+
+}